@@ -0,0 +1,265 @@
+package pl.edu.agh.toik.infun.build;
+
+import com.aayushatharva.brotli4j.Brotli4jLoader;
+import com.aayushatharva.brotli4j.encoder.Encoder;
+import org.springframework.util.DigestUtils;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Build step run by exec-maven-plugin on the copied resources of the server: writes downscaled variants of
+ * {@link #RESPONSIVE_IMAGES}, .gz and .br variants next to text assets, records the content hash of every asset in {@link #MANIFEST} and packs
+ * everything, variants included, into {@link #PACK}. The file names and the pack layout are read by
+ * FingerprintResourceResolver, ImageVariantResourceResolver and AssetPack of the server.
+ */
+public class AssetPipeline {
+    public static final String MANIFEST = "asset-manifest.properties";
+    public static final String IMAGE_MANIFEST = "image-variants.properties";
+    public static final String PACK = "assets.pack";
+
+    private static final int PACK_MAGIC = 0x49465041;
+    private static final int PACK_VERSION = 1;
+
+    private static final List<String> ROOTS = Arrays.asList("static", "tasks");
+    private static final Set<String> COMPRESSIBLE = new HashSet<>(Arrays.asList(
+            "js", "css", "html", "json", "svg", "txt", "xml", "map", "ttf", "otf", "eot"));
+    // only images displayed scaled to the screen, sprite sheets must keep their pixel coordinates
+    private static final List<String> RESPONSIVE_IMAGES = Arrays.asList(
+            "glob:tasks/jigsaw/img/img*.jpg",
+            "glob:tasks/mahjong/img/mahjong_bg.png");
+    private static final Pattern IMAGE_VARIANT = Pattern.compile(".*-\\d+w\\.[^.]+$");
+    private static final List<Integer> IMAGE_WIDTHS = Collections.unmodifiableList(Arrays.asList(480, 960, 1440));
+    private static final float JPEG_QUALITY = 0.8f;
+
+    private final Path output;
+    private final boolean brotli;
+
+    private AssetPipeline(Path output, boolean brotli) {
+        this.output = output;
+        this.brotli = brotli;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path output = Paths.get(args.length > 0 ? args[0] : "target/classes");
+        boolean brotli;
+        try {
+            Brotli4jLoader.ensureAvailability();
+            brotli = true;
+        } catch (Throwable e) {
+            System.err.println("Brotli is not available on this platform, writing gzip variants only: " + e);
+            brotli = false;
+        }
+        new AssetPipeline(output, brotli).run();
+    }
+
+    private void run() throws IOException {
+        writeImageVariants();
+        Map<String, String> manifest = new HashMap<>();
+        Map<String, Path> packed = new TreeMap<>();
+        for (String root : ROOTS) {
+            Path rootPath = output.resolve(root);
+            if (!Files.isDirectory(rootPath)) {
+                continue;
+            }
+            List<Path> assets;
+            try (Stream<Path> files = Files.walk(rootPath)) {
+                assets = files.filter(Files::isRegularFile)
+                        .filter(path -> !isVariant(path))
+                        .collect(Collectors.toList());
+            }
+            for (Path asset : assets) {
+                byte[] content = Files.readAllBytes(asset);
+                manifest.put(output.relativize(asset).toString().replace('\\', '/'), DigestUtils.md5DigestAsHex(content));
+                if (COMPRESSIBLE.contains(extension(asset))) {
+                    writeVariant(asset, ".gz", content, AssetPipeline::gzip);
+                    if (brotli) {
+                        writeVariant(asset, ".br", content, AssetPipeline::brotli);
+                    }
+                }
+            }
+            try (Stream<Path> files = Files.walk(rootPath)) {
+                files.filter(Files::isRegularFile)
+                        .forEach(path -> packed.put(output.relativize(path).toString().replace('\\', '/'), path));
+            }
+        }
+        writePack(output.resolve(PACK), packed);
+        Properties properties = new Properties();
+        properties.putAll(manifest);
+        try (Writer writer = Files.newBufferedWriter(output.resolve(MANIFEST), StandardCharsets.UTF_8)) {
+            properties.store(writer, "content hashes of static and task assets");
+        }
+        System.out.println("Asset manifest: " + manifest.size() + " entries, asset pack: " + packed.size() + " files, brotli " + (brotli ? "enabled" : "disabled"));
+    }
+
+    private void writeImageVariants() throws IOException {
+        List<PathMatcher> matchers = RESPONSIVE_IMAGES.stream()
+                .map(FileSystems.getDefault()::getPathMatcher)
+                .collect(Collectors.toList());
+        Properties variants = new Properties();
+        List<Path> images;
+        try (Stream<Path> files = Files.walk(output.resolve("tasks"))) {
+            images = files.filter(Files::isRegularFile)
+                    .filter(path -> matchers.stream().anyMatch(matcher -> matcher.matches(output.relativize(path))))
+                    .filter(path -> !IMAGE_VARIANT.matcher(path.getFileName().toString()).matches())
+                    .collect(Collectors.toList());
+        }
+        for (Path image : images) {
+            BufferedImage source = ImageIO.read(image.toFile());
+            if (source == null) {
+                continue;
+            }
+            List<String> widths = new ArrayList<>();
+            for (int width : IMAGE_WIDTHS) {
+                if (width >= source.getWidth()) {
+                    break;
+                }
+                Path variant = image.resolveSibling(variantPath(image.getFileName().toString(), width));
+                if (!Files.exists(variant) || Files.getLastModifiedTime(variant).compareTo(Files.getLastModifiedTime(image)) < 0) {
+                    writeImage(scale(source, width), extension(image), variant);
+                }
+                if (Files.size(variant) < Files.size(image)) {
+                    widths.add(String.valueOf(width));
+                } else {
+                    Files.delete(variant);
+                }
+            }
+            if (!widths.isEmpty()) {
+                variants.setProperty(output.relativize(image).toString().replace('\\', '/'), String.join(",", widths));
+            }
+        }
+        try (Writer writer = Files.newBufferedWriter(output.resolve(IMAGE_MANIFEST), StandardCharsets.UTF_8)) {
+            variants.store(writer, "downscaled variant widths of responsive images");
+        }
+    }
+
+    // same naming as ImageVariantResourceResolver.variantPath
+    private static String variantPath(String name, int width) {
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? name + "-" + width + "w" : name.substring(0, dot) + "-" + width + "w" + name.substring(dot);
+    }
+
+    /**
+     * Layout: magic, version, build time, entry count, index of (path, offset, length), then file contents.
+     *
+     * @param files classpath path of an asset -> file to pack
+     */
+    private static void writePack(Path pack, Map<String, Path> files) throws IOException {
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        DataOutputStream indexOut = new DataOutputStream(index);
+        long offset = 0;
+        for (Map.Entry<String, Path> file : files.entrySet()) {
+            long length = Files.size(file.getValue());
+            if (offset + length > Integer.MAX_VALUE) {
+                throw new IOException("Asset pack larger than 2 GB");
+            }
+            byte[] path = file.getKey().getBytes(StandardCharsets.UTF_8);
+            indexOut.writeInt(path.length);
+            indexOut.write(path);
+            indexOut.writeInt((int) offset);
+            indexOut.writeInt((int) length);
+            offset += length;
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(pack)))) {
+            out.writeInt(PACK_MAGIC);
+            out.writeInt(PACK_VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(files.size());
+            index.writeTo(out);
+            for (Path file : files.values()) {
+                Files.copy(file, out);
+            }
+        }
+    }
+
+    private static BufferedImage scale(BufferedImage source, int width) {
+        int height = Math.max(1, Math.round((float) source.getHeight() * width / source.getWidth()));
+        boolean alpha = source.getColorModel().hasAlpha();
+        BufferedImage scaled = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        graphics.drawImage(source.getScaledInstance(width, height, Image.SCALE_AREA_AVERAGING), 0, 0, null);
+        graphics.dispose();
+        return scaled;
+    }
+
+    private static void writeImage(BufferedImage image, String format, Path target) throws IOException {
+        if (!format.equals("jpg") && !format.equals("jpeg")) {
+            ImageIO.write(image, format, target.toFile());
+            return;
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(JPEG_QUALITY);
+        param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+        Files.deleteIfExists(target);
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(target.toFile())) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private interface Compressor {
+        byte[] compress(byte[] content) throws IOException;
+    }
+
+    private void writeVariant(Path asset, String suffix, byte[] content, Compressor compressor) throws IOException {
+        Path variant = asset.resolveSibling(asset.getFileName() + suffix);
+        if (Files.exists(variant) && Files.getLastModifiedTime(variant).compareTo(Files.getLastModifiedTime(asset)) >= 0) {
+            return;
+        }
+        byte[] compressed = compressor.compress(content);
+        if (compressed.length < content.length) {
+            Files.write(variant, compressed);
+        } else {
+            Files.deleteIfExists(variant);
+        }
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 2 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes) {{
+            def.setLevel(Deflater.BEST_COMPRESSION);
+        }}) {
+            gzip.write(content);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] brotli(byte[] content) throws IOException {
+        return Encoder.compress(content, new Encoder.Parameters().setQuality(11));
+    }
+
+    private static boolean isVariant(Path path) {
+        String name = path.getFileName().toString();
+        return name.endsWith(".gz") || name.endsWith(".br");
+    }
+
+    private static String extension(Path path) {
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+}
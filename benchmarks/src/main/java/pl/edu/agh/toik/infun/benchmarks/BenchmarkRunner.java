@@ -0,0 +1,54 @@
+package pl.edu.agh.toik.infun.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Runs the benchmarks once per thread count and writes each run as JMH JSON to
+ * {@code <out>/<label>-threads-<n>.json}. The label defaults to the current git commit, so the files
+ * of two commits can be compared side by side (e.g. with jmh.morethan.io).
+ * <p>
+ * System properties: {@code threads} (default {@code 1,4}), {@code out} (default {@code jmh-results}),
+ * {@code label}. Any other arguments are regular JMH options, e.g. a benchmark regex or
+ * {@code -p rooms=1 -wi 1 -i 3}.
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        String label = System.getProperty("label", gitCommit());
+        Path out = Paths.get(System.getProperty("out", "jmh-results"));
+        Files.createDirectories(out);
+        for (String threads : System.getProperty("threads", "1,4").split(",")) {
+            Options options = new OptionsBuilder()
+                    .parent(commandLine)
+                    .threads(Integer.parseInt(threads.trim()))
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(out.resolve(label + "-threads-" + threads.trim() + ".json").toString())
+                    .build();
+            new Runner(options).run();
+        }
+    }
+
+    private static String gitCommit() {
+        try {
+            Process git = new ProcessBuilder("git", "rev-parse", "--short", "HEAD").start();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(git.getInputStream()))) {
+                String commit = reader.readLine();
+                if (git.waitFor() == 0 && commit != null) {
+                    return commit.trim();
+                }
+            }
+        } catch (Exception ignored) {
+        }
+        return "local";
+    }
+}
@@ -0,0 +1,115 @@
+package pl.edu.agh.toik.infun.benchmarks;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import pl.edu.agh.toik.infun.exceptions.InFunException;
+import pl.edu.agh.toik.infun.model.Room;
+import pl.edu.agh.toik.infun.model.requests.ParameterConfig;
+import pl.edu.agh.toik.infun.model.requests.TaskConfig;
+import pl.edu.agh.toik.infun.services.*;
+import pl.edu.agh.toik.infun.utils.RoomIdAllocator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Wires a RoomService by hand, the way Spring would, with the journal off and no cluster, and fills it
+ * with rooms of players who already have a current task.
+ */
+final class Fixtures {
+    static final String CREATOR_PREFIX = "creator-";
+    static final List<String> TASK_NAMES = Arrays.asList("2048", "tetris", "snake", "memo", "jigsaw", "minesweeper");
+
+    private Fixtures() {
+    }
+
+    /**
+     * @param roomIds the allocator behind {@link RoomService#generateRandomRoomId()}, kept for giving the ids back
+     */
+    static RoomService roomService(RoomIdAllocator roomIds) {
+        RoomService roomService = new RoomService(
+                new LeaderboardStreamService(new ObjectMapper()),
+                folderScanService(),
+                new JournalService(),
+                new ClusterService(),
+                new MetricRegistry(),
+                roomArchiveService(),
+                // idle timeout left at 0, rooms are never evicted during a run
+                new RoomLifecycleService(),
+                roomIds);
+        roomService.init();
+        return roomService;
+    }
+
+    static IFolderScanService folderScanService() {
+        return new StaticFolderScanService();
+    }
+
+    static RoomIdAllocator roomIdAllocator() {
+        return new RoomIdAllocator("ABCDEFGHIJKLMNOPQRSTUVWXYZ", 4);
+    }
+
+    static List<TaskConfig> taskConfigs() {
+        List<TaskConfig> configs = new ArrayList<>();
+        for (String name : TASK_NAMES) {
+            configs.add(new TaskConfig(name, Collections.singletonList(new ParameterConfig("3", "level", false))));
+        }
+        return configs;
+    }
+
+    static String roomId(int room) {
+        return String.format("R%03d", room);
+    }
+
+    static String cookie(int room, int user) {
+        return "cookie-" + room + "-" + user;
+    }
+
+    static String nick(int user) {
+        return "gracz" + user;
+    }
+
+    /**
+     * Adds the rooms and players and moves every player to its first task.
+     */
+    static void populate(RoomService roomService, int rooms, int usersPerRoom, int taskNumber) throws InFunException {
+        for (int room = 0; room < rooms; room++) {
+            roomService.addRoom(new Room(roomId(room), taskConfigs(), CREATOR_PREFIX + room, taskNumber));
+            for (int user = 0; user < usersPerRoom; user++) {
+                roomService.addUser(nick(user), 10, roomId(room), cookie(room, user));
+                roomService.getNextTask(cookie(room, user));
+            }
+        }
+    }
+
+    private static RoomArchiveService roomArchiveService() {
+        try {
+            // retention 0 keeps archives for good
+            RoomArchiveService roomArchiveService = new RoomArchiveService(Files.createTempDirectory("infun-archive").toString(), 0);
+            roomArchiveService.init();
+            return roomArchiveService;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static class StaticFolderScanService implements IFolderScanService {
+        private final List<TaskConfig> configs = taskConfigs();
+
+        @Override
+        public List<TaskConfig> getTaskConfigs() {
+            return configs;
+        }
+
+        @Override
+        public Optional<TaskConfig> getTaskConfig(String taskName) {
+            return configs.stream().filter(config -> config.getName().equals(taskName)).findFirst();
+        }
+
+        @Override
+        public void reload() {
+        }
+    }
+}
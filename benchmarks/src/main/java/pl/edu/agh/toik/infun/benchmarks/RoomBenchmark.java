@@ -0,0 +1,37 @@
+package pl.edu.agh.toik.infun.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pl.edu.agh.toik.infun.model.Room;
+import pl.edu.agh.toik.infun.model.requests.TaskConfig;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Room construction, dominated by drawing the task sequence.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoomBenchmark {
+    @Param({"1", "6"})
+    public int tasks;
+
+    @Param({"10", "100"})
+    public int taskNumber;
+
+    private List<TaskConfig> configs;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        configs = Fixtures.taskConfigs().subList(0, tasks);
+    }
+
+    @Benchmark
+    public Room createRoom() {
+        return new Room("ABCD", configs, "creator", taskNumber);
+    }
+}
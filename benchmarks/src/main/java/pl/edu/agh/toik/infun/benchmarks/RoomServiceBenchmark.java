@@ -0,0 +1,130 @@
+package pl.edu.agh.toik.infun.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pl.edu.agh.toik.infun.exceptions.InFunException;
+import pl.edu.agh.toik.infun.model.domain.QueuedResult;
+import pl.edu.agh.toik.infun.model.domain.UserResult;
+import pl.edu.agh.toik.infun.model.requests.LastResultResponse;
+import pl.edu.agh.toik.infun.services.RoomService;
+import pl.edu.agh.toik.infun.utils.RoomIdAllocator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RoomService entry points on a pre-populated service. Every thread picks a random room and player
+ * per call, so one room means all threads contend on the same room lock and more rooms spread them.
+ * The thread count is set by BenchmarkRunner (or -t).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoomServiceBenchmark {
+    private static final int TASK_NUMBER = 10;
+    private static final int BATCH_SIZE = 32;
+
+    @Param({"1", "16"})
+    public int rooms;
+
+    @Param({"30", "300"})
+    public int usersPerRoom;
+
+    private RoomService roomService;
+    private RoomIdAllocator roomIds;
+    private String[][] currentTasks;
+    private final AtomicLong joins = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws InFunException {
+        roomIds = Fixtures.roomIdAllocator();
+        roomService = Fixtures.roomService(roomIds);
+        Fixtures.populate(roomService, rooms, usersPerRoom, TASK_NUMBER);
+        currentTasks = new String[rooms][usersPerRoom];
+        for (int room = 0; room < rooms; room++) {
+            for (int user = 0; user < usersPerRoom; user++) {
+                currentTasks[room][user] = roomService.getRoomById(Fixtures.roomId(room)).get()
+                        .getUserByCookie(Fixtures.cookie(room, user)).get().getCurrentTask();
+            }
+        }
+    }
+
+    // joining alone would grow the rooms for the whole run, so every join is paired with a leave
+    @Benchmark
+    public void joinAndLeave() throws InFunException {
+        String cookie = "bench-" + joins.incrementAndGet();
+        roomService.addUser(cookie, 10, Fixtures.roomId(randomRoom()), cookie);
+        roomService.removeUser(cookie);
+    }
+
+    @Benchmark
+    public String getNextTask() throws InFunException {
+        return roomService.getNextTask(Fixtures.cookie(randomRoom(), randomUser()));
+    }
+
+    @Benchmark
+    public void addResult() throws InFunException {
+        int room = randomRoom();
+        int user = randomUser();
+        roomService.addResult(currentTasks[room][user], Fixtures.cookie(room, user), Fixtures.nick(user), Fixtures.roomId(room), 1);
+    }
+
+    // the path used by the asynchronous result ingestion
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void addResultsBatch() throws InFunException {
+        int room = randomRoom();
+        List<QueuedResult> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            int user = randomUser();
+            batch.add(new QueuedResult(currentTasks[room][user], Fixtures.cookie(room, user), Fixtures.nick(user), Fixtures.roomId(room), 1));
+        }
+        roomService.addResults(Fixtures.roomId(room), batch);
+    }
+
+    @Benchmark
+    public LastResultResponse getLastResults() {
+        return roomService.getLastResults(Fixtures.cookie(randomRoom(), randomUser()));
+    }
+
+    @Benchmark
+    public List<UserResult> getResults() throws InFunException {
+        int room = randomRoom();
+        return roomService.getResults(Fixtures.roomId(room), Fixtures.CREATOR_PREFIX + room, 0, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public List<UserResult> getResultsTop10() throws InFunException {
+        int room = randomRoom();
+        return roomService.getResults(Fixtures.roomId(room), Fixtures.CREATOR_PREFIX + room, 0, 10);
+    }
+
+    // what /{task}/config does for a client without a cached copy
+    @Benchmark
+    public byte[] getConfig() throws InFunException {
+        int room = randomRoom();
+        int user = randomUser();
+        return roomService.getConfigResponse(currentTasks[room][user], Fixtures.cookie(room, user)).body();
+    }
+
+    // generateRandomRoomId reserves the id, so it's released straight away or a long run would use up the id space
+    @Benchmark
+    public String allocateRoomId() {
+        String roomId = roomService.generateRandomRoomId();
+        roomIds.release(roomId);
+        return roomId;
+    }
+
+    private int randomRoom() {
+        return ThreadLocalRandom.current().nextInt(rooms);
+    }
+
+    private int randomUser() {
+        return ThreadLocalRandom.current().nextInt(usersPerRoom);
+    }
+}
@@ -0,0 +1,70 @@
+package pl.edu.agh.toik.infun.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.spring5.SpringTemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+import pl.edu.agh.toik.infun.config.TemplatePrewarmer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering a task page the way a player's first request does. Cold clears the template cache
+ * before every render, so each one pays for resolving and parsing the template like the first
+ * request after startup without prewarming; prewarmed runs {@link TemplatePrewarmer} once, so
+ * every render is served from the cache. The clearing runs per invocation, outside the measured
+ * time; its timestamping overhead is small next to the hundreds of microseconds of a cold render.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TemplateRenderBenchmark {
+    @Param({"2048", "jigsaw", "minesweeper"})
+    public String task;
+
+    @Param({"false", "true"})
+    public boolean prewarmed;
+
+    private SpringTemplateEngine templateEngine;
+    private Context context;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        templateEngine = new SpringTemplateEngine();
+        templateEngine.addTemplateResolver(templateResolver("tasks/", 0));
+        templateEngine.addTemplateResolver(templateResolver("templates/", 1));
+        context = new Context();
+        if (prewarmed) {
+            new TemplatePrewarmer(templateEngine, Fixtures.folderScanService()).prewarm();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void coldCache() {
+        if (!prewarmed) {
+            templateEngine.clearTemplateCache();
+        }
+    }
+
+    @Benchmark
+    public String render() {
+        return templateEngine.process(task + "/index", context);
+    }
+
+    // the task resolver of WebConfig and the page resolver of Spring Boot, with caching on as in the prod profile
+    private static ClassLoaderTemplateResolver templateResolver(String prefix, int order) {
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix(prefix);
+        resolver.setSuffix(".html");
+        resolver.setCacheable(true);
+        resolver.setTemplateMode(TemplateMode.HTML);
+        resolver.setCharacterEncoding("UTF-8");
+        resolver.setOrder(order);
+        resolver.setCheckExistence(true);
+        return resolver;
+    }
+}
@@ -0,0 +1,97 @@
+package pl.edu.agh.toik.infun.loadtest;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import pl.edu.agh.toik.infun.Application;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The application started in this JVM on free loopback ports with the production defaults. The journal
+ * and the room archive are kept in a temporary directory removed on close, so every run starts from an
+ * empty server.
+ */
+public class EmbeddedServer implements Closeable {
+    public static final String HOST = "127.0.0.1";
+
+    private final ConfigurableApplicationContext context;
+    private final Path directory;
+    private final int httpsPort;
+    private final int httpPort;
+
+    private EmbeddedServer(ConfigurableApplicationContext context, Path directory, int httpsPort, int httpPort) {
+        this.context = context;
+        this.directory = directory;
+        this.httpsPort = httpsPort;
+        this.httpPort = httpPort;
+    }
+
+    /**
+     * @param args extra Spring arguments, e.g. {@code --spring.profiles.active=prod}
+     */
+    public static EmbeddedServer start(String... args) throws IOException {
+        final int httpsPort = freePort();
+        final int httpPort = freePort();
+        final Path directory = Files.createTempDirectory("infun-loadtest");
+        // command line arguments, application.properties would win over default properties
+        final List<String> arguments = new ArrayList<>(Arrays.asList(
+                "--server.address=" + HOST,
+                "--server.port=" + httpsPort,
+                "--server.http.port=" + httpPort,
+                "--infun.journal.dir=" + directory.resolve("journal"),
+                "--infun.rooms.archive-dir=" + directory.resolve("archive"),
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN"));
+        arguments.addAll(Arrays.asList(args));
+        final ConfigurableApplicationContext context;
+        try {
+            context = new SpringApplicationBuilder(Application.class).run(arguments.toArray(new String[0]));
+        } catch (RuntimeException e) {
+            delete(directory);
+            throw e;
+        }
+        return new EmbeddedServer(context, directory, httpsPort, httpPort);
+    }
+
+    public String httpsUrl() {
+        return "https://" + HOST + ":" + httpsPort;
+    }
+
+    public String httpUrl() {
+        return "http://" + HOST + ":" + httpPort;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            context.close();
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getByName(HOST))) {
+            return socket.getLocalPort();
+        }
+    }
+}
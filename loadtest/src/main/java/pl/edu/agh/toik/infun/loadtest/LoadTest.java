@@ -0,0 +1,39 @@
+package pl.edu.agh.toik.infun.loadtest;
+
+import java.time.Duration;
+
+import static pl.edu.agh.toik.infun.loadtest.Steps.*;
+
+/**
+ * Boots the server on loopback, plays a classroom against it and exits with 1 when an SLO is missed.
+ * <p>
+ * System properties: {@code rooms} (2), {@code players} per room (30), {@code games} per player (5),
+ * {@code tasks} (2048,tetris,sudoku,memo,mahjong), {@code join.seconds} (5), {@code play.min.ms} (2000),
+ * {@code play.max.ms} (6000), {@code dashboard.ms} (1000, the delay before the dashboard reconnects to the leaderboard stream) and {@code slo}, see {@link Slo#parse(String)}.
+ * Program arguments are passed to the server, e.g. {@code --spring.profiles.active=prod}.
+ */
+public class LoadTest {
+    private static final String DEFAULT_SLO = "* p95<500ms; * p99<1500ms; * errors<1%";
+
+    public static void main(String[] args) throws Exception {
+        final Scenario scenario = Scenario.named("classroom")
+                .rooms(Integer.getInteger("rooms", 2))
+                .playersPerRoom(Integer.getInteger("players", 30))
+                .taskNumber(Integer.getInteger("games", 5))
+                .tasks(System.getProperty("tasks", "2048,tetris,sudoku,memo,mahjong").split(","))
+                .joinWithin(Duration.ofSeconds(Long.getLong("join.seconds", 5)))
+                .player(join(),
+                        untilFinished(nextTask(), config(),
+                                play(Long.getLong("play.min.ms", 2000), Long.getLong("play.max.ms", 6000)),
+                                end(), taskResult()))
+                .dashboard(Duration.ofMillis(Long.getLong("dashboard.ms", 1000)), resultsStream())
+                .slos(Slo.parse(System.getProperty("slo", DEFAULT_SLO)));
+
+        final Report report;
+        try (EmbeddedServer server = EmbeddedServer.start(args)) {
+            report = scenario.run(server);
+        }
+        report.print(System.out);
+        System.exit(report.passed() ? 0 : 1);
+    }
+}
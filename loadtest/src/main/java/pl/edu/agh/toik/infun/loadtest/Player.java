@@ -0,0 +1,305 @@
+package pl.edu.agh.toik.infun.loadtest;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * One simulated browser: keeps its own cookies, does not follow redirects on its own and times every
+ * request into the {@link Recorder} under the endpoint name given by the step.
+ * Absolute redirects (the server sends them with its LAN address and default ports) are mapped back
+ * to the loopback server, keeping the scheme, and become the origin of the following relative paths.
+ */
+public class Player {
+    /**
+     * The longest an event stream waits without data before checking whether the player finished, also
+     * the limit for its response headers as the read timeout cannot change once connected.
+     */
+    static final Duration STREAM_POLL = Duration.ofSeconds(5);
+    // the server uses a self-signed certificate
+    private static final SSLSocketFactory TRUST_ALL = trustAll();
+
+    private final EmbeddedServer server;
+    private Recorder recorder;
+    private final Map<String, String> cookies = new LinkedHashMap<>();
+    private String origin;
+
+    final String nick;
+    final String roomId;
+    final List<String> tasks;
+    String task;
+    volatile boolean finished;
+
+    public Player(EmbeddedServer server, Recorder recorder, String nick, String roomId, List<String> tasks) {
+        this.server = server;
+        this.recorder = recorder;
+        this.nick = nick;
+        this.roomId = roomId;
+        this.tasks = tasks;
+        this.origin = server.httpsUrl();
+    }
+
+    public static class Response {
+        public final int status;
+        public final String location;
+        public final String body;
+
+        Response(int status, String location, String body) {
+            this.status = status;
+            this.location = location;
+            this.body = body;
+        }
+
+        public boolean isRedirect() {
+            return status / 100 == 3 && location != null;
+        }
+    }
+
+    public Response get(String endpoint, String path) throws IOException {
+        return request(endpoint, "GET", path, null, null);
+    }
+
+    public Response postForm(String endpoint, String path, Map<String, String> form) throws IOException {
+        final String body = form.entrySet().stream()
+                .map(e -> encode(e.getKey()) + "=" + encode(e.getValue()))
+                .collect(Collectors.joining("&"));
+        return request(endpoint, "POST", path, "application/x-www-form-urlencoded", body);
+    }
+
+    public Response postJson(String endpoint, String path, String json) throws IOException {
+        return request(endpoint, "POST", path, "application/json", json);
+    }
+
+    /**
+     * Records the following requests into another recorder, keeping the session.
+     */
+    void recordInto(Recorder recorder) {
+        this.recorder = recorder;
+    }
+
+    public void run(Step step) throws IOException, InterruptedException {
+        step.run(this);
+    }
+
+    public String cookie(String name) {
+        return cookies.get(name);
+    }
+
+    public void setCookie(String name, String value) {
+        cookies.put(name, value);
+    }
+
+    /**
+     * Opens a text/event-stream response, the time until its first event is recorded under the endpoint.
+     * The stream is read until the server ends it or until {@link #finish()}.
+     */
+    public EventStream openStream(String endpoint, String path) throws IOException {
+        final long started = System.nanoTime();
+        boolean ok = false;
+        try {
+            final HttpURLConnection connection = connect(resolve(path), "GET");
+            connection.setRequestProperty("Accept", "text/event-stream");
+            // lets a reader waiting for the next event notice finish()
+            connection.setReadTimeout((int) STREAM_POLL.toMillis());
+            final int status = connection.getResponseCode();
+            if (status != 200) {
+                read(connection, status);
+                return null;
+            }
+            final EventStream opened = new EventStream(connection);
+            ok = opened.next() != null;
+            if (!ok) {
+                opened.close();
+            }
+            return ok ? opened : null;
+        } finally {
+            recorder.record(endpoint, System.nanoTime() - started, ok);
+        }
+    }
+
+    /**
+     * Ends the player's steps, an event stream being read ends within {@link #STREAM_POLL}.
+     */
+    public void finish() {
+        finished = true;
+    }
+
+    public class EventStream implements Closeable {
+        private final HttpURLConnection connection;
+        private final BufferedReader reader;
+
+        EventStream(HttpURLConnection connection) throws IOException {
+            this.connection = connection;
+            this.reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        /**
+         * @return name of the next event, null once the stream is over or the player finished
+         */
+        public String next() throws IOException {
+            String event = "message";
+            boolean data = false;
+            while (true) {
+                final String line;
+                try {
+                    line = reader.readLine();
+                } catch (SocketTimeoutException e) {
+                    if (finished) {
+                        return null;
+                    }
+                    continue;
+                }
+                if (line == null) {
+                    return null;
+                } else if (line.isEmpty()) {
+                    if (data) {
+                        return event;
+                    }
+                } else if (line.startsWith("event:")) {
+                    event = line.substring("event:".length()).trim();
+                } else if (line.startsWith("data:")) {
+                    data = true;
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Records a failure that did not come from a status code, e.g. an unexpected redirect.
+     */
+    public void fail(String endpoint) {
+        recorder.record(endpoint, 0, false);
+    }
+
+    private Response request(String endpoint, String method, String path, String contentType, String body) throws IOException {
+        final URL url = resolve(path);
+        final long started = System.nanoTime();
+        boolean ok = false;
+        try {
+            final HttpURLConnection connection = connect(url, method);
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            if (body != null) {
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", contentType);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            final int status = connection.getResponseCode();
+            final String content = read(connection, status);
+            final List<String> setCookies = connection.getHeaderFields().get("Set-Cookie");
+            if (setCookies != null) {
+                for (String setCookie : setCookies) {
+                    final String pair = setCookie.split(";", 2)[0];
+                    final int separator = pair.indexOf('=');
+                    if (separator > 0) {
+                        cookies.put(pair.substring(0, separator).trim(), pair.substring(separator + 1).trim());
+                    }
+                }
+            }
+            ok = status < 400;
+            return new Response(status, connection.getHeaderField("Location"), content);
+        } finally {
+            recorder.record(endpoint, System.nanoTime() - started, ok);
+        }
+    }
+
+    private HttpURLConnection connect(URL url, String method) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        if (connection instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) connection).setSSLSocketFactory(TRUST_ALL);
+            ((HttpsURLConnection) connection).setHostnameVerifier((host, session) -> true);
+        }
+        connection.setInstanceFollowRedirects(false);
+        connection.setRequestMethod(method);
+        if (!cookies.isEmpty()) {
+            connection.setRequestProperty("Cookie", cookies.entrySet().stream()
+                    .map(e -> e.getKey() + "=" + e.getValue())
+                    .collect(Collectors.joining("; ")));
+        }
+        return connection;
+    }
+
+    private URL resolve(String path) throws IOException {
+        if (!path.startsWith("http://") && !path.startsWith("https://")) {
+            return new URL(origin + path);
+        }
+        final URL absolute = new URL(path);
+        origin = "https".equals(absolute.getProtocol()) ? server.httpsUrl() : server.httpUrl();
+        return new URL(origin + absolute.getFile());
+    }
+
+    // the body has to be read to the end for the connection to be kept alive
+    private static String read(HttpURLConnection connection, int status) throws IOException {
+        final InputStream raw = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (raw == null) {
+            return "";
+        }
+        try (InputStream in = "gzip".equals(connection.getContentEncoding()) ? new GZIPInputStream(raw) : raw) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            for (int read; (read = in.read(buffer)) != -1; ) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static SSLSocketFactory trustAll() {
+        try {
+            final SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, new TrustManager[]{new X509TrustManager() {
+                @Override
+                public void checkClientTrusted(X509Certificate[] chain, String authType) {
+                }
+
+                @Override
+                public void checkServerTrusted(X509Certificate[] chain, String authType) {
+                }
+
+                @Override
+                public X509Certificate[] getAcceptedIssuers() {
+                    return new X509Certificate[0];
+                }
+            }}, null);
+            return context.getSocketFactory();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
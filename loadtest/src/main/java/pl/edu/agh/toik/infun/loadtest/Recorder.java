@@ -0,0 +1,51 @@
+package pl.edu.agh.toik.infun.loadtest;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects every request latency per endpoint. Runs are minutes long, so the samples are kept as
+ * they are and sorted once for the report.
+ */
+public class Recorder {
+    private final Map<String, Samples> endpoints = new ConcurrentHashMap<>();
+
+    public void record(String endpoint, long nanos, boolean ok) {
+        endpoints.computeIfAbsent(endpoint, e -> new Samples()).add(nanos, ok);
+    }
+
+    public Map<String, Samples> getEndpoints() {
+        return endpoints;
+    }
+
+    public static class Samples {
+        private long[] latencies = new long[1024];
+        private int count;
+        private int errors;
+
+        synchronized void add(long nanos, boolean ok) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+            if (!ok) {
+                errors++;
+            }
+        }
+
+        public synchronized long[] sorted() {
+            final long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
+        public synchronized int getCount() {
+            return count;
+        }
+
+        public synchronized int getErrors() {
+            return errors;
+        }
+    }
+}
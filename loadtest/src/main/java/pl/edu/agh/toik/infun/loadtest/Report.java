@@ -0,0 +1,104 @@
+package pl.edu.agh.toik.infun.loadtest;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Latency percentiles and throughput per endpoint of one run, checked against the scenario's SLOs.
+ */
+public class Report {
+    private static final double[] PERCENTILES = {50, 90, 95, 99};
+
+    private final String scenario;
+    private final double seconds;
+    private final Map<String, Endpoint> endpoints = new TreeMap<>();
+    private final List<String> violations = new ArrayList<>();
+    private final List<Slo> slos;
+
+    Report(String scenario, Recorder recorder, long elapsedNanos, List<Slo> slos) {
+        this.scenario = scenario;
+        this.seconds = elapsedNanos / 1e9;
+        this.slos = slos;
+        recorder.getEndpoints().forEach((name, samples) -> endpoints.put(name, new Endpoint(name, samples)));
+        for (Slo slo : slos) {
+            endpoints.values().stream()
+                    .filter(endpoint -> slo.appliesTo(endpoint.getName()))
+                    .map(slo::check)
+                    .filter(Objects::nonNull)
+                    .forEach(violations::add);
+        }
+    }
+
+    public static class Endpoint {
+        private final String name;
+        private final long[] sorted;
+        private final int errors;
+
+        Endpoint(String name, Recorder.Samples samples) {
+            this.name = name;
+            this.sorted = samples.sorted();
+            this.errors = samples.getErrors();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getCount() {
+            return sorted.length;
+        }
+
+        public double getErrorRate() {
+            return sorted.length == 0 ? 0 : (double) errors / sorted.length;
+        }
+
+        /**
+         * Nearest-rank percentile in milliseconds.
+         */
+        public double percentile(double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            final int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+            return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)] / 1e6;
+        }
+    }
+
+    public boolean passed() {
+        return violations.isEmpty();
+    }
+
+    public Map<String, Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    public List<String> getViolations() {
+        return violations;
+    }
+
+    public void print(PrintStream out) {
+        final int total = endpoints.values().stream().mapToInt(Endpoint::getCount).sum();
+        out.println();
+        out.println(String.format(Locale.ROOT, "Scenario %s: %d requests in %.1f s (%.1f req/s)", scenario, total, seconds, total / seconds));
+        out.println(String.format(Locale.ROOT, "%-26s %8s %8s %8s %8s %8s %8s %8s %7s",
+                "endpoint", "count", "req/s", "p50", "p90", "p95", "p99", "max", "errors"));
+        for (Endpoint endpoint : endpoints.values()) {
+            out.println(String.format(Locale.ROOT, "%-26s %8d %8.1f %8.1f %8.1f %8.1f %8.1f %8.1f %6.2f%%",
+                    endpoint.getName(), endpoint.getCount(), endpoint.getCount() / seconds,
+                    endpoint.percentile(PERCENTILES[0]), endpoint.percentile(PERCENTILES[1]),
+                    endpoint.percentile(PERCENTILES[2]), endpoint.percentile(PERCENTILES[3]),
+                    endpoint.percentile(100), endpoint.getErrorRate() * 100));
+        }
+        out.println("(latencies in ms)");
+        out.println();
+        out.println("SLO: " + slos.stream().map(Slo::toString).collect(Collectors.joining("; ")));
+        violations.forEach(violation -> out.println("  FAIL " + violation));
+        out.println(passed() ? "PASS" : "FAIL");
+    }
+}
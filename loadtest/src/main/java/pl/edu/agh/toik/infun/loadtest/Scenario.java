@@ -0,0 +1,171 @@
+package pl.edu.agh.toik.infun.loadtest;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A classroom run: every room is created by its own teacher session, then all players join within
+ * the join window and run the player steps, while each teacher runs the dashboard steps at an
+ * interval until the last player of the room is done, which also ends a dashboard step following a stream.
+ *
+ * <pre>
+ * Scenario.named("classroom")
+ *         .rooms(2).playersPerRoom(30).tasks("2048", "tetris").taskNumber(5)
+ *         .joinWithin(Duration.ofSeconds(5))
+ *         .player(join(), untilFinished(nextTask(), config(), play(2000, 6000), end(), taskResult()))
+ *         .dashboard(Duration.ofSeconds(1), resultsStream())
+ *         .slo(Slo.latency(Slo.ANY, 95, 500))
+ *         .run(server);
+ * </pre>
+ */
+public class Scenario {
+    private final String name;
+    private int rooms = 1;
+    private int playersPerRoom = 30;
+    private int taskNumber = 5;
+    private List<String> tasks = Collections.singletonList("2048");
+    private Duration joinWindow = Duration.ZERO;
+    private Step player = Steps.sequence();
+    private Step dashboard = Steps.sequence();
+    private Duration dashboardInterval = Duration.ofSeconds(1);
+    private final List<Slo> slos = new ArrayList<>();
+
+    private Scenario(String name) {
+        this.name = name;
+    }
+
+    public static Scenario named(String name) {
+        return new Scenario(name);
+    }
+
+    public Scenario rooms(int rooms) {
+        this.rooms = rooms;
+        return this;
+    }
+
+    public Scenario playersPerRoom(int playersPerRoom) {
+        this.playersPerRoom = playersPerRoom;
+        return this;
+    }
+
+    public Scenario taskNumber(int taskNumber) {
+        this.taskNumber = taskNumber;
+        return this;
+    }
+
+    public Scenario tasks(String... tasks) {
+        this.tasks = Arrays.asList(tasks);
+        return this;
+    }
+
+    /**
+     * Players start at random moments of this window, zero makes every player join at once.
+     */
+    public Scenario joinWithin(Duration joinWindow) {
+        this.joinWindow = joinWindow;
+        return this;
+    }
+
+    public Scenario player(Step... steps) {
+        this.player = Steps.sequence(steps);
+        return this;
+    }
+
+    public Scenario dashboard(Duration interval, Step... steps) {
+        this.dashboardInterval = interval;
+        this.dashboard = Steps.sequence(steps);
+        return this;
+    }
+
+    public Scenario slo(Slo slo) {
+        slos.add(slo);
+        return this;
+    }
+
+    public Scenario slos(Collection<Slo> slos) {
+        this.slos.addAll(slos);
+        return this;
+    }
+
+    public Report run(EmbeddedServer server) throws IOException, InterruptedException {
+        // rooms are created before the lesson, on a cold server, so they are not part of the report
+        final Recorder setup = new Recorder();
+        final Recorder recorder = new Recorder();
+        final List<Player> teachers = new ArrayList<>();
+        for (int room = 0; room < rooms; room++) {
+            final Player teacher = createRoom(server, setup, String.format("LT%02d", room));
+            teacher.recordInto(recorder);
+            teachers.add(teacher);
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(rooms * (playersPerRoom + 1));
+        final Map<String, CountDownLatch> remaining = new HashMap<>();
+        teachers.forEach(teacher -> remaining.put(teacher.roomId, new CountDownLatch(playersPerRoom)));
+        final long started = System.nanoTime();
+        for (Player teacher : teachers) {
+            final CountDownLatch players = remaining.get(teacher.roomId);
+            executor.execute(() -> runDashboard(teacher, players));
+            for (int i = 0; i < playersPerRoom; i++) {
+                final Player player = new Player(server, recorder, "gracz" + i, teacher.roomId, tasks);
+                executor.execute(() -> runPlayer(player, players, teacher));
+            }
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.DAYS);
+        return new Report(name, recorder, System.nanoTime() - started, slos);
+    }
+
+    // create_room.html and the redirect to manage.html, as the teacher does it before the lesson
+    private Player createRoom(EmbeddedServer server, Recorder recorder, String roomId) throws IOException {
+        final Player teacher = new Player(server, recorder, "nauczyciel", roomId, tasks);
+        teacher.get("GET /room/create", "/room/create");
+        final Map<String, String> form = new LinkedHashMap<>();
+        form.put("roomId", roomId);
+        form.put("taskNumber", String.valueOf(taskNumber));
+        for (int i = 0; i < tasks.size(); i++) {
+            form.put("tasksConfig[" + i + "].name", tasks.get(i));
+        }
+        final Player.Response response = teacher.postForm("POST /manage", "/manage", form);
+        if (!response.isRedirect()) {
+            throw new IOException("Nie udało się utworzyć pokoju " + roomId + ": " + response.status);
+        }
+        teacher.get("GET /manage/{room_id}", response.location);
+        return teacher;
+    }
+
+    private void runPlayer(Player player, CountDownLatch players, Player teacher) {
+        try {
+            if (!joinWindow.isZero()) {
+                Thread.sleep(ThreadLocalRandom.current().nextLong(joinWindow.toMillis() + 1));
+            }
+            player.run(this.player);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            player.fail("error: " + e.getClass().getSimpleName());
+        } finally {
+            players.countDown();
+            if (players.getCount() == 0) {
+                teacher.finish();
+            }
+        }
+    }
+
+    private void runDashboard(Player teacher, CountDownLatch players) {
+        try {
+            while (!players.await(dashboardInterval.toMillis(), TimeUnit.MILLISECONDS)) {
+                teacher.run(dashboard);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            teacher.fail("error: " + e.getClass().getSimpleName());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package pl.edu.agh.toik.infun.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A service level objective for one endpoint, or for every endpoint with {@code *}: either a latency
+ * percentile limit or a maximum share of failed requests.
+ */
+public class Slo {
+    public static final String ANY = "*";
+
+    // "<endpoint> p95<300ms" or "<endpoint> errors<1%"
+    private static final Pattern SPEC = Pattern.compile("^(.+?)\\s+(?:p(\\d+(?:\\.\\d+)?)<(\\d+)ms|errors<(\\d+(?:\\.\\d+)?)%)$");
+
+    private final String endpoint;
+    private final double percentile;
+    private final double limit;
+
+    private Slo(String endpoint, double percentile, double limit) {
+        this.endpoint = endpoint;
+        this.percentile = percentile;
+        this.limit = limit;
+    }
+
+    public static Slo latency(String endpoint, double percentile, long maxMillis) {
+        return new Slo(endpoint, percentile, maxMillis);
+    }
+
+    public static Slo errorRate(String endpoint, double maxRate) {
+        return new Slo(endpoint, -1, maxRate);
+    }
+
+    /**
+     * Parses objectives separated by {@code ;}, e.g. {@code * p95<500ms; GET /last/results p99<200ms; * errors<1%}.
+     */
+    public static List<Slo> parse(String spec) {
+        final List<Slo> slos = new ArrayList<>();
+        for (String part : spec.split(";")) {
+            if (part.trim().isEmpty()) {
+                continue;
+            }
+            final Matcher matcher = SPEC.matcher(part.trim());
+            if (!matcher.matches()) {
+                throw new IllegalArgumentException("Niepoprawny opis SLO: " + part.trim());
+            }
+            slos.add(matcher.group(2) != null
+                    ? latency(matcher.group(1), Double.parseDouble(matcher.group(2)), Long.parseLong(matcher.group(3)))
+                    : errorRate(matcher.group(1), Double.parseDouble(matcher.group(4)) / 100));
+        }
+        return slos;
+    }
+
+    public boolean appliesTo(String name) {
+        return ANY.equals(endpoint) || endpoint.equals(name);
+    }
+
+    /**
+     * @return description of the violation, or null when the endpoint meets the objective
+     */
+    public String check(Report.Endpoint measured) {
+        if (percentile < 0) {
+            final double rate = measured.getErrorRate();
+            return rate > limit ? String.format(Locale.ROOT, "%s errors %.2f%% > %.2f%%", measured.getName(), rate * 100, limit * 100) : null;
+        }
+        final double millis = measured.percentile(percentile);
+        return millis > limit ? String.format(Locale.ROOT, "%s p%s %.1f ms > %.0f ms", measured.getName(), format(percentile), millis, limit) : null;
+    }
+
+    @Override
+    public String toString() {
+        return percentile < 0
+                ? String.format(Locale.ROOT, "%s errors<%s%%", endpoint, format(limit * 100))
+                : String.format(Locale.ROOT, "%s p%s<%.0fms", endpoint, format(percentile), limit);
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) ? String.valueOf((long) value) : String.valueOf(value);
+    }
+}
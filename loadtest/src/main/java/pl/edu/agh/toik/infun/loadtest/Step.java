@@ -0,0 +1,11 @@
+package pl.edu.agh.toik.infun.loadtest;
+
+import java.io.IOException;
+
+/**
+ * One action of a simulated browser, see {@link Steps} for the available ones.
+ */
+@FunctionalInterface
+public interface Step {
+    void run(Player player) throws IOException, InterruptedException;
+}
@@ -0,0 +1,171 @@
+package pl.edu.agh.toik.infun.loadtest;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The building blocks of a scenario, each one doing what the page of the same name does in a browser.
+ */
+public final class Steps {
+    private static final int MAX_RETRIES = 3;
+
+    private Steps() {
+    }
+
+    /**
+     * join_room.html: opens the page and submits the form. Opened on loopback the page redirects to
+     * the LAN address before it sets the player cookie, so the player sets it the way the page would.
+     */
+    public static Step join() {
+        return player -> {
+            player.get("GET /room/join", "/room/join");
+            if (player.cookie("COOKIE") == null) {
+                player.setCookie("COOKIE", player.cookie("JSESSIONID"));
+            }
+            final Map<String, String> form = new LinkedHashMap<>();
+            form.put("roomId", player.roomId);
+            form.put("nick", player.nick);
+            form.put("age", String.valueOf(ThreadLocalRandom.current().nextInt(7, 15)));
+            final Player.Response response = player.postForm("POST /room/join", "/room/join", form);
+            if (!response.isRedirect()) {
+                player.fail("POST /room/join");
+                player.finished = true;
+            }
+        };
+    }
+
+    /**
+     * The /tasks/new → /tasks/next chain, or /end once every task is done.
+     */
+    public static Step nextTask() {
+        return player -> {
+            final Player.Response response = player.get("GET /tasks/new", "/tasks/new");
+            if (!response.isRedirect()) {
+                player.fail("GET /tasks/new");
+                player.finished = true;
+                return;
+            }
+            if (response.location.endsWith("/end")) {
+                player.get("GET /end", response.location);
+                player.finished = true;
+                return;
+            }
+            final Player.Response page = player.get("GET /tasks/next", response.location);
+            player.task = taskOf(player, page.body);
+        };
+    }
+
+    /**
+     * The game asking for its configuration.
+     */
+    public static Step config() {
+        return player -> player.get("GET /{task}/config", "/" + player.task + "/config");
+    }
+
+    /**
+     * Playing the game, i.e. waiting between {@code minMillis} and {@code maxMillis}.
+     */
+    public static Step play(long minMillis, long maxMillis) {
+        return think(minMillis, maxMillis);
+    }
+
+    public static Step think(long minMillis, long maxMillis) {
+        return player -> Thread.sleep(minMillis + ThreadLocalRandom.current().nextLong(Math.max(1, maxMillis - minMillis)));
+    }
+
+    /**
+     * The game posting its result, retried after Retry-After while the server sheds load.
+     */
+    public static Step end() {
+        return player -> {
+            final String json = String.format("{\"result\":%d,\"group\":\"%s\",\"nick\":\"%s\"}",
+                    ThreadLocalRandom.current().nextInt(0, 101), player.roomId, player.nick);
+            for (int attempt = 0; attempt < MAX_RETRIES; attempt++) {
+                final Player.Response response = player.postJson("POST /{task}/end", "/" + player.task + "/end", json);
+                if (response.status != 503) {
+                    return;
+                }
+                Thread.sleep(1000);
+            }
+        };
+    }
+
+    /**
+     * task_result.html: the page and its {@code /last/results} request.
+     */
+    public static Step taskResult() {
+        return player -> {
+            player.get("GET /task_result", "/task_result");
+            player.get("GET /last/results", "/last/results");
+        };
+    }
+
+    public static Step lastResults() {
+        return player -> player.get("GET /last/results", "/last/results");
+    }
+
+    /**
+     * The leaderboard of the player's room fetched at once, run with the teacher's session.
+     */
+    public static Step results() {
+        return player -> player.postForm("POST /{room_id}/results", "/" + player.roomId + "/results", new LinkedHashMap<>());
+    }
+
+    /**
+     * manage.html following the leaderboard of the player's room, run with the teacher's session: opens
+     * the stream and reads its events until the server ends it, like EventSource before it reconnects,
+     * or until the room is over.
+     */
+    public static Step resultsStream() {
+        return player -> {
+            try (Player.EventStream stream = player.openStream("SSE /{room_id}/results/stream",
+                    "/" + player.roomId + "/results/stream")) {
+                while (stream != null && stream.next() != null) {
+                    // deltas only keep the leaderboard up to date, there is nothing to time
+                }
+            }
+        };
+    }
+
+    public static Step sequence(Step... steps) {
+        return player -> {
+            for (Step step : steps) {
+                if (player.finished) {
+                    return;
+                }
+                step.run(player);
+            }
+        };
+    }
+
+    public static Step repeat(int times, Step... steps) {
+        final Step sequence = sequence(steps);
+        return player -> {
+            for (int i = 0; i < times && !player.finished; i++) {
+                sequence.run(player);
+            }
+        };
+    }
+
+    /**
+     * Repeats the steps until the player reaches /end (or fails to join).
+     */
+    public static Step untilFinished(Step... steps) {
+        final Step sequence = sequence(steps);
+        return player -> {
+            while (!player.finished) {
+                sequence.run(player);
+            }
+        };
+    }
+
+    // the game pages load their scripts and call their endpoints under /<task>/, the robot page loads robot.js
+    private static String taskOf(Player player, String page) throws IOException {
+        return player.tasks.stream()
+                .filter(task -> page.contains("/" + task + "/") || page.contains("/" + task + ".js"))
+                .findFirst()
+                .orElseThrow(() -> new IOException("Nie rozpoznano gry na stronie /tasks/next"));
+    }
+}
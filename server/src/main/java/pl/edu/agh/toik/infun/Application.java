@@ -4,10 +4,12 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 
 @SpringBootApplication
 @EnableCaching
+@EnableScheduling
 @ComponentScan(basePackages = {"pl.edu.agh.toik.infun.controllers", "pl.edu.agh.toik.infun.services", "resources", "pl.edu.agh.toik.infun.model", "pl.edu.agh.toik.infun.config", "pl.edu.agh.toik.infun.handlers"})
 public class Application {
     public static void main(String[] args) {
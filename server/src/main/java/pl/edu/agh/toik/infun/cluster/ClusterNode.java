@@ -0,0 +1,32 @@
+package pl.edu.agh.toik.infun.cluster;
+
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+@Value
+@AllArgsConstructor
+public class ClusterNode {
+    private String host;
+    private int httpsPort;
+    private int httpPort;
+
+    /**
+     * @param node {@code host:httpsPort:httpPort}
+     */
+    public static ClusterNode parse(String node) {
+        String[] parts = node.trim().split(":");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Węzeł klastra musi mieć postać host:portHttps:portHttp, podano " + node);
+        }
+        return new ClusterNode(parts[0], Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+    }
+
+    public String baseUrl(boolean secure) {
+        return secure ? "https://" + host + ":" + httpsPort : "http://" + host + ":" + httpPort;
+    }
+
+    @Override
+    public String toString() {
+        return host + ":" + httpsPort + ":" + httpPort;
+    }
+}
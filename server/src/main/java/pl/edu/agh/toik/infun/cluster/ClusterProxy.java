@@ -0,0 +1,167 @@
+package pl.edu.agh.toik.infun.cluster;
+
+import org.springframework.util.StreamUtils;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Passes a request on to the node that owns its room and relays the answer, so the browser only
+ * ever talks to the node it came in through and keeps that node's host-only cookies. Cookies reach
+ * the owner unchanged, including the entry node's session id, which identifies creators; the
+ * session cookie the owner sets in return is dropped, so the browser keeps the entry node's session.
+ * Forwarded requests carry {@link #FORWARDED_HEADER}, the owner handles them itself whatever its ring says.
+ */
+public class ClusterProxy {
+    public static final String FORWARDED_HEADER = "X-InFun-Forwarded-By";
+
+    private static final String SESSION_COOKIE = "JSESSIONID";
+    private static final int CONNECT_TIMEOUT = 5000;
+    private static final int READ_TIMEOUT = 60000;
+    // per connection, or set by HttpURLConnection itself
+    private static final Set<String> SKIPPED_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "keep-alive", "proxy-authenticate", "proxy-authorization", "te", "trailer",
+            "transfer-encoding", "upgrade", "host", "content-length"));
+
+    private final SSLSocketFactory sslSocketFactory;
+
+    /**
+     * @param sslSocketFactory trusting the certificate the nodes share, null for the JDK defaults
+     */
+    public ClusterProxy(SSLSocketFactory sslSocketFactory) {
+        this.sslSocketFactory = sslSocketFactory;
+    }
+
+    /**
+     * @param stream the answer is an event stream, relayed as it comes and without a read timeout
+     * @throws IOException when the owner can't be reached or breaks off the answer
+     */
+    public void forward(HttpServletRequest request, HttpServletResponse response, ClusterNode owner, boolean stream) throws IOException {
+        final String base = owner.baseUrl(request.isSecure());
+        // a form is sent again from its parsed parameters, which include the query string
+        final byte[] form = isForm(request) ? encode(request.getParameterMap()) : null;
+        final String query = form == null ? request.getQueryString() : null;
+        final HttpURLConnection connection = (HttpURLConnection) new URL(base + request.getRequestURI() + (query != null ? "?" + query : "")).openConnection();
+        if (connection instanceof HttpsURLConnection && sslSocketFactory != null) {
+            ((HttpsURLConnection) connection).setSSLSocketFactory(sslSocketFactory);
+            // only the shared certificate is trusted, and it can't name every node
+            ((HttpsURLConnection) connection).setHostnameVerifier((host, session) -> true);
+        }
+        connection.setInstanceFollowRedirects(false);
+        connection.setUseCaches(false);
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(stream ? 0 : READ_TIMEOUT);
+        connection.setRequestMethod(request.getMethod());
+        try {
+            copyRequestHeaders(request, connection);
+            connection.setRequestProperty(FORWARDED_HEADER, request.getServerName());
+            connection.setRequestProperty("X-Forwarded-For", request.getRemoteAddr());
+            if (form != null || request.getContentLengthLong() > 0 || request.getHeader("Transfer-Encoding") != null) {
+                connection.setDoOutput(true);
+                try (OutputStream out = connection.getOutputStream()) {
+                    if (form != null) {
+                        out.write(form);
+                    } else {
+                        StreamUtils.copy(request.getInputStream(), out);
+                    }
+                }
+            }
+            final int status = connection.getResponseCode();
+            response.setStatus(status);
+            copyResponseHeaders(connection, response, owner);
+            final InputStream body = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            if (body != null) {
+                try (InputStream in = body) {
+                    relay(in, response, stream);
+                }
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static void copyRequestHeaders(HttpServletRequest request, HttpURLConnection connection) {
+        for (String name : Collections.list(request.getHeaderNames())) {
+            if (SKIPPED_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                continue;
+            }
+            for (String value : Collections.list(request.getHeaders(name))) {
+                connection.addRequestProperty(name, value);
+            }
+        }
+    }
+
+    private static void copyResponseHeaders(HttpURLConnection connection, HttpServletResponse response, ClusterNode owner) {
+        for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            final String name = header.getKey();
+            // the null key is the status line
+            if (name == null || SKIPPED_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                continue;
+            }
+            for (String value : header.getValue()) {
+                if ("set-cookie".equalsIgnoreCase(name) && value.startsWith(SESSION_COOKIE + "=")) {
+                    continue;
+                }
+                if ("location".equalsIgnoreCase(name)) {
+                    value = stripBase(value, owner.baseUrl(true), owner.baseUrl(false));
+                }
+                response.addHeader(name, value);
+            }
+        }
+    }
+
+    // the browser has to come back to the entry node, not the owner
+    private static String stripBase(String location, String... bases) {
+        for (String base : bases) {
+            if (location.startsWith(base)) {
+                return location.substring(base.length());
+            }
+        }
+        return location;
+    }
+
+    private static void relay(InputStream in, HttpServletResponse response, boolean stream) throws IOException {
+        final OutputStream out = response.getOutputStream();
+        final byte[] buffer = new byte[8192];
+        for (int read; (read = in.read(buffer)) >= 0; ) {
+            try {
+                out.write(buffer, 0, read);
+                if (stream) {
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // the client went away, that's how an event stream ends
+                return;
+            }
+        }
+    }
+
+    private static boolean isForm(HttpServletRequest request) {
+        final String contentType = request.getContentType();
+        return "POST".equals(request.getMethod()) && contentType != null
+                && contentType.toLowerCase(Locale.ROOT).startsWith("application/x-www-form-urlencoded");
+    }
+
+    private static byte[] encode(Map<String, String[]> parameters) throws IOException {
+        final StringBuilder form = new StringBuilder();
+        for (Map.Entry<String, String[]> parameter : parameters.entrySet()) {
+            for (String value : parameter.getValue()) {
+                if (form.length() > 0) {
+                    form.append('&');
+                }
+                form.append(URLEncoder.encode(parameter.getKey(), "UTF-8")).append('=').append(URLEncoder.encode(value, "UTF-8"));
+            }
+        }
+        return form.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,283 @@
+package pl.edu.agh.toik.infun.config;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SlidingTimeWindowReservoir;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import pl.edu.agh.toik.infun.logging.Events;
+import pl.edu.agh.toik.infun.services.IRoomService;
+import pl.edu.agh.toik.infun.utils.TokenBuckets;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps a join storm (a class scanning the QR code at once) from slowing the server down for everyone.
+ * A request, other than for static assets, has to pass in turn:
+ * <ul>
+ * <li>a token bucket of its session, or of its client address when it has no live session yet,</li>
+ * <li>a token bucket of the room, when it's a join to an existing room,</li>
+ * <li>a limit of requests in progress, with a bounded queue of requests waiting for a place.</li>
+ * </ul>
+ * While the server is overloaded, i.e. recent requests are slow or the heap stays full after collections,
+ * joins are shed and requests no longer wait in the queue, so players already in a game keep playing.
+ * Refused requests get a small "try again shortly" response with {@code Retry-After}, without reaching
+ * Spring Security, so they don't open a session either.
+ *
+ * A whole class behind one NAT shares an address, so only requests without a session (first visits, at most
+ * a few per player) are limited by address. Session ids are handed out by the server, so unlike cookie values
+ * they can't be made up to get fresh buckets.
+ *
+ * The queue holds container threads, so the limit plus the queue should stay below {@code server.tomcat.max-threads}.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 5)
+public class AdmissionControlFilter extends OncePerRequestFilter {
+    private static final String JOIN_PATH = "/room/join";
+    private static final List<String> STATIC_PATHS = Arrays.asList(
+            "/js/**", "/css/**", "/img/**", "/lib/**", "/tasks/**/js/**", "/tasks/**/css/**", "/tasks/**/img/**", "/tasks/**/lib/**",
+            "/favicon.ico");
+    private static final long LOAD_CHECK_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    // a few slow requests, like the first ones after a start, don't make an overload
+    private static final int MIN_LATENCY_SAMPLES = 50;
+    private static final String MESSAGE = "Serwer jest teraz przeciążony, spróbuj ponownie za chwilę.";
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    @Value("${infun.admission.enabled:true}")
+    private boolean enabled;
+
+    @Value("${infun.admission.ip.rate-per-second:20}")
+    private double ipRate;
+
+    @Value("${infun.admission.ip.burst:60}")
+    private double ipBurst;
+
+    @Value("${infun.admission.session.rate-per-second:10}")
+    private double sessionRate;
+
+    @Value("${infun.admission.session.burst:30}")
+    private double sessionBurst;
+
+    @Value("${infun.admission.room.join-rate-per-second:10}")
+    private double roomJoinRate;
+
+    @Value("${infun.admission.room.join-burst:40}")
+    private double roomJoinBurst;
+
+    @Value("${infun.admission.max-keys:10000}")
+    private int maxKeys;
+
+    @Value("${infun.admission.max-concurrent:64}")
+    private int maxConcurrent;
+
+    @Value("${infun.admission.queue-size:100}")
+    private int queueSize;
+
+    @Value("${infun.admission.queue-timeout-ms:2000}")
+    private long queueTimeout;
+
+    @Value("${infun.admission.shed.latency-ms:1000}")
+    private long shedLatency;
+
+    @Value("${infun.admission.shed.heap-ratio:0.9}")
+    private double shedHeapRatio;
+
+    @Value("${infun.admission.retry-after-seconds:2}")
+    private int retryAfter;
+
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    @Autowired
+    private IRoomService roomService;
+
+    private TokenBuckets ipBuckets;
+    private TokenBuckets sessionBuckets;
+    private TokenBuckets roomJoinBuckets;
+    private Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+    private Timer latency;
+    private final Map<Rejection, Meter> rejections = new EnumMap<>(Rejection.class);
+    private volatile boolean overloaded;
+    private volatile long lastLoadCheck;
+
+    private enum Rejection {
+        IP(HttpStatus.TOO_MANY_REQUESTS), SESSION(HttpStatus.TOO_MANY_REQUESTS), ROOM(HttpStatus.TOO_MANY_REQUESTS),
+        QUEUE(HttpStatus.SERVICE_UNAVAILABLE), SHED(HttpStatus.SERVICE_UNAVAILABLE);
+
+        private final HttpStatus status;
+
+        Rejection(HttpStatus status) {
+            this.status = status;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        ipBuckets = new TokenBuckets(ipRate, ipBurst, maxKeys);
+        sessionBuckets = new TokenBuckets(sessionRate, sessionBurst, maxKeys);
+        roomJoinBuckets = new TokenBuckets(roomJoinRate, roomJoinBurst, maxKeys);
+        permits = new Semaphore(maxConcurrent, true);
+        latency = metricRegistry.register(MetricRegistry.name(AdmissionControlFilter.class, "latency"),
+                new Timer(new SlidingTimeWindowReservoir(10, TimeUnit.SECONDS)));
+        for (Rejection rejection : Rejection.values()) {
+            rejections.put(rejection, metricRegistry.meter(MetricRegistry.name(AdmissionControlFilter.class, "rejected", rejection.name().toLowerCase())));
+        }
+        metricRegistry.register(MetricRegistry.name(AdmissionControlFilter.class, "in-flight"),
+                (Gauge<Integer>) () -> maxConcurrent - permits.availablePermits());
+        metricRegistry.register(MetricRegistry.name(AdmissionControlFilter.class, "queued"), (Gauge<Integer>) queued::get);
+        metricRegistry.register(MetricRegistry.name(AdmissionControlFilter.class, "overloaded"), (Gauge<Boolean>) () -> overloaded);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        final String path = request.getServletPath();
+        return !enabled || STATIC_PATHS.stream().anyMatch(pattern -> pathMatcher.match(pattern, path));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+        final long now = System.nanoTime();
+        if (request.isRequestedSessionIdValid()) {
+            final String session = request.getRequestedSessionId();
+            if (!sessionBuckets.tryTake(session, now)) {
+                reject(request, response, Rejection.SESSION, sessionBuckets.nanosToToken(session, now));
+                return;
+            }
+        } else if (!ipBuckets.tryTake(request.getRemoteAddr(), now)) {
+            reject(request, response, Rejection.IP, ipBuckets.nanosToToken(request.getRemoteAddr(), now));
+            return;
+        }
+        final boolean joining = JOIN_PATH.equals(request.getServletPath());
+        // ids of rooms that don't exist would only fill the buckets, such joins fail anyway
+        final String roomId = joining && "POST".equals(request.getMethod()) && StringUtils.hasText(request.getParameter("roomId"))
+                && roomService.getRoomById(request.getParameter("roomId").trim()).isPresent()
+                ? request.getParameter("roomId").trim()
+                : null;
+        if (roomId != null && !roomJoinBuckets.tryTake(roomId, now)) {
+            reject(request, response, Rejection.ROOM, roomJoinBuckets.nanosToToken(roomId, now));
+            return;
+        }
+        final boolean overloaded = isOverloaded(now);
+        if (overloaded && joining) {
+            reject(request, response, Rejection.SHED, 0);
+            return;
+        }
+        if (!acquire(overloaded)) {
+            reject(request, response, overloaded ? Rejection.SHED : Rejection.QUEUE, 0);
+            return;
+        }
+        final Timer.Context context = latency.time();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            context.stop();
+            permits.release();
+        }
+    }
+
+    // waits in the queue only while it has room and the server keeps up
+    private boolean acquire(boolean overloaded) {
+        if (permits.tryAcquire()) {
+            return true;
+        }
+        if (overloaded) {
+            return false;
+        }
+        if (queued.incrementAndGet() > queueSize) {
+            queued.decrementAndGet();
+            return false;
+        }
+        try {
+            return permits.tryAcquire(queueTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    private boolean isOverloaded(long now) {
+        if (now - lastLoadCheck < LOAD_CHECK_INTERVAL_NANOS) {
+            return overloaded;
+        }
+        lastLoadCheck = now;
+        final Snapshot snapshot = latency.getSnapshot();
+        final double latencyMs = snapshot.size() < MIN_LATENCY_SAMPLES ? 0 : snapshot.get95thPercentile() / 1e6;
+        final double heapRatio = heapRatioAfterGc();
+        final boolean nowOverloaded = latencyMs > shedLatency || heapRatio > shedHeapRatio;
+        if (nowOverloaded != overloaded) {
+            Events.warn(nowOverloaded ? "admission.overloaded" : "admission.recovered", "p95Ms", Math.round(latencyMs), "heapRatio", heapRatio);
+        }
+        overloaded = nowOverloaded;
+        return nowOverloaded;
+    }
+
+    // what is left of the heap after the last collections, garbage waiting for the next one doesn't count
+    private static double heapRatioAfterGc() {
+        long used = 0;
+        long max = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            final MemoryUsage usage = pool.getType() == MemoryType.HEAP ? pool.getCollectionUsage() : null;
+            if (usage != null && usage.getMax() > 0) {
+                used += usage.getUsed();
+                max += usage.getMax();
+            }
+        }
+        return max == 0 ? 0 : (double) used / max;
+    }
+
+    private void reject(HttpServletRequest request, HttpServletResponse response, Rejection rejection, long nanosToToken) throws IOException {
+        final long seconds = Math.max(nanosToToken > 0 ? TimeUnit.NANOSECONDS.toSeconds(nanosToToken + 999_999_999L) : retryAfter, 1);
+        rejections.get(rejection).mark();
+        Events.info("admission.rejected", "reason", rejection, "path", request.getServletPath(), "ip", request.getRemoteAddr());
+        response.setStatus(rejection.status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(seconds));
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+        final String accept = request.getHeader(HttpHeaders.ACCEPT);
+        final byte[] body;
+        if (accept != null && accept.contains(MediaType.TEXT_HTML_VALUE)) {
+            response.setContentType(MediaType.TEXT_HTML_VALUE + ";charset=UTF-8");
+            // a page that was only being loaded tries again by itself, a sent form is left to the player
+            final String refresh = "GET".equals(request.getMethod()) ? "<meta http-equiv=\"refresh\" content=\"" + seconds + "\">" : "";
+            body = ("<!DOCTYPE html><html><head><meta charset=\"utf-8\"><meta name=\"viewport\" content=\"width=device-width\">"
+                    + refresh + "<title>InFun</title></head><body><p>" + MESSAGE + "</p></body></html>").getBytes(StandardCharsets.UTF_8);
+        } else {
+            response.setContentType(MediaType.TEXT_PLAIN_VALUE + ";charset=UTF-8");
+            body = MESSAGE.getBytes(StandardCharsets.UTF_8);
+        }
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+}
@@ -0,0 +1,200 @@
+package pl.edu.agh.toik.infun.config;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.StringUtils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Single file holding all static and task assets, written at build time by AssetPipeline of the
+ * asset-pipeline module and memory-mapped at startup.
+ * Layout: magic, version, build time, entry count, index of (path, offset, length), then file contents.
+ */
+public class AssetPack {
+    public static final String FILE_NAME = "assets.pack";
+
+    private static final int MAGIC = 0x49465041;
+    private static final int VERSION = 1;
+
+    private final ByteBuffer data;
+    private final Map<String, Entry> entries;
+    private final long lastModified;
+
+    private static class Entry {
+        private final int offset;
+        private final int length;
+
+        private Entry(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private AssetPack(ByteBuffer data, Map<String, Entry> entries, long lastModified) {
+        this.data = data;
+        this.entries = entries;
+        this.lastModified = lastModified;
+    }
+
+    public static AssetPack empty() {
+        return new AssetPack(ByteBuffer.allocate(0), Collections.emptyMap(), 0);
+    }
+
+    /**
+     * Maps the pack from the classpath; a pack inside a jar is extracted to a temporary file first.
+     */
+    public static AssetPack load() throws IOException {
+        ClassPathResource resource = new ClassPathResource(FILE_NAME);
+        if (!resource.exists()) {
+            return empty();
+        }
+        File file;
+        if (resource.isFile()) {
+            file = resource.getFile();
+        } else {
+            file = File.createTempFile("infun-assets", ".pack");
+            file.deleteOnExit();
+            try (InputStream in = resource.getInputStream(); OutputStream out = new FileOutputStream(file)) {
+                StreamUtils.copy(in, out);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private static AssetPack read(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Unsupported asset pack format");
+        }
+        long lastModified = buffer.getLong();
+        int count = buffer.getInt();
+        Map<String, Entry> entries = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            byte[] path = new byte[buffer.getInt()];
+            buffer.get(path);
+            entries.put(new String(path, StandardCharsets.UTF_8), new Entry(buffer.getInt(), buffer.getInt()));
+        }
+        return new AssetPack(buffer.slice(), entries, lastModified);
+    }
+
+    public Set<String> paths() {
+        return entries.keySet();
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public Resource getResource(String path) {
+        return new PackedResource(path, entries.get(path));
+    }
+
+    // view over a slice of the mapped pack, the content is never copied onto the heap
+    private class PackedResource extends AbstractResource {
+        private final String path;
+        private final Entry entry;
+
+        private PackedResource(String path, Entry entry) {
+            this.path = path;
+            this.entry = entry;
+        }
+
+        @Override
+        public boolean exists() {
+            return entry != null;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            if (entry == null) {
+                throw new FileNotFoundException(getDescription() + " does not exist");
+            }
+            ByteBuffer slice = data.duplicate();
+            slice.position(entry.offset);
+            slice.limit(entry.offset + entry.length);
+            return new ByteBufferInputStream(slice.slice());
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            if (entry == null) {
+                throw new FileNotFoundException(getDescription() + " does not exist");
+            }
+            return entry.length;
+        }
+
+        @Override
+        public long lastModified() {
+            return lastModified;
+        }
+
+        @Override
+        public Resource createRelative(String relativePath) {
+            return getResource(StringUtils.applyRelativePath(path, relativePath));
+        }
+
+        @Override
+        public String getFilename() {
+            return StringUtils.getFilename(path);
+        }
+
+        @Override
+        public String getDescription() {
+            return "asset pack entry [" + path + "]";
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return this == other || (other instanceof PackedResource && path.equals(((PackedResource) other).path));
+        }
+
+        @Override
+        public int hashCode() {
+            return path.hashCode();
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package pl.edu.agh.toik.infun.config;
+
+import org.springframework.core.io.Resource;
+import org.springframework.web.servlet.resource.AbstractResourceResolver;
+import org.springframework.web.servlet.resource.ResourceResolverChain;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves resources of one handler straight from the {@link AssetPack}. The handler's location list is
+ * flattened at startup into request path -> pack entry, so a lookup is a single map probe instead of
+ * a classpath probe per location. Paths missing from the pack fall through to the rest of the chain.
+ */
+public class AssetPackResourceResolver extends AbstractResourceResolver {
+    private static final String CLASSPATH_PREFIX = "classpath:/";
+
+    private final AssetPack assetPack;
+    private final Map<String, String> packPaths = new HashMap<>();
+
+    public AssetPackResourceResolver(AssetPack assetPack, String... locations) {
+        this.assetPack = assetPack;
+        for (String location : locations) {
+            if (!location.startsWith(CLASSPATH_PREFIX)) {
+                continue;
+            }
+            // same rules as PathResourceResolver: paths are relative to the last '/' of the location
+            // (ClassPathResource.createRelative) but the resource must still lie under the location
+            String path = location.substring(CLASSPATH_PREFIX.length());
+            String prefix = path.substring(0, path.lastIndexOf('/') + 1);
+            String under = path.endsWith("/") ? path : path + "/";
+            for (String packPath : assetPack.paths()) {
+                if (packPath.startsWith(under)) {
+                    packPaths.putIfAbsent(packPath.substring(prefix.length()), packPath);
+                }
+            }
+        }
+    }
+
+    @Override
+    protected Resource resolveResourceInternal(HttpServletRequest request, String requestPath, List<? extends Resource> locations, ResourceResolverChain chain) {
+        String packPath = packPaths.get(requestPath);
+        return packPath != null ? assetPack.getResource(packPath) : chain.resolveResource(request, requestPath, locations);
+    }
+
+    @Override
+    protected String resolveUrlPathInternal(String resourceUrlPath, List<? extends Resource> locations, ResourceResolverChain chain) {
+        return packPaths.containsKey(resourceUrlPath) ? resourceUrlPath : chain.resolveUrlPath(resourceUrlPath, locations);
+    }
+}
@@ -0,0 +1,167 @@
+package pl.edu.agh.toik.infun.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.ResourceUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+import pl.edu.agh.toik.infun.cluster.ClusterNode;
+import pl.edu.agh.toik.infun.cluster.ClusterProxy;
+import pl.edu.agh.toik.infun.logging.Events;
+import pl.edu.agh.toik.infun.services.IClusterService;
+import pl.edu.agh.toik.infun.services.IRoomService;
+
+import javax.annotation.PostConstruct;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManagerFactory;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Passes requests for a room owned by another node there through a {@link ClusterProxy}, so the
+ * browser stays on the node it came in through and keeps its cookies. The room comes from the path,
+ * the join form or, for requests that only carry the player cookie, from the {@link #ROOM_COOKIE}
+ * set when the player joined, so no node has to look the cookie up anywhere else. Static task
+ * assets are the same on every node and are always served locally. Runs before Spring Security so
+ * a forwarded request doesn't open a session here; sessions the owner opens for forwarded requests
+ * are dropped once they're answered.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class ClusterRoutingFilter extends OncePerRequestFilter {
+    public static final String ROOM_COOKIE = "ROOM";
+
+    private static final String JOIN_PATH = "/room/join";
+    private static final String STREAM_PATH = "/{room_id}/results/stream";
+    private static final List<String> ROOM_PATHS = Arrays.asList(
+            "/manage/{room_id}", "/{room_id}/results", STREAM_PATH, "/{room_id}/remove",
+            "/archive/{room_id}/restore");
+    private static final List<String> PLAYER_PATHS = Arrays.asList(
+            JOIN_PATH, "/tasks/new", "/tasks/next", "/{task_name}/config", "/{task_name}/end", "/results/batch", "/last/results",
+            "/end", "/task_result", "/robot/control");
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    @Autowired
+    private IClusterService clusterService;
+
+    @Autowired
+    private IRoomService roomService;
+
+    @Value("${server.ssl.key-store:}")
+    private String keyStore;
+
+    @Value("${server.ssl.key-store-type:PKCS12}")
+    private String keyStoreType;
+
+    @Value("${server.ssl.key-store-password:}")
+    private String keyStorePassword;
+
+    private ClusterProxy proxy;
+
+    public ClusterRoutingFilter() {
+    }
+
+    /**
+     * Wires the filter by hand, without Spring, forwarding with the JDK's trust store.
+     */
+    public ClusterRoutingFilter(IClusterService clusterService, IRoomService roomService) {
+        this.clusterService = clusterService;
+        this.roomService = roomService;
+        this.proxy = new ClusterProxy(null);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (clusterService.isClustered()) {
+            proxy = new ClusterProxy(StringUtils.hasText(keyStore) ? sslSocketFactory() : null);
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !clusterService.isClustered();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+        if (request.getHeader(ClusterProxy.FORWARDED_HEADER) != null) {
+            // the entry node routed it here already
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                HttpSession session = request.getSession(false);
+                if (session != null && session.isNew()) {
+                    session.invalidate();
+                }
+            }
+            return;
+        }
+        String path = request.getServletPath();
+        boolean playerPath = PLAYER_PATHS.stream().anyMatch(pattern -> pathMatcher.match(pattern, path));
+        // /last/results would also match /{room_id}/results
+        String roomId = playerPath ? null : ROOM_PATHS.stream()
+                .filter(pattern -> pathMatcher.match(pattern, path))
+                .findFirst()
+                .map(pattern -> pathMatcher.extractUriTemplateVariables(pattern, path).get("room_id"))
+                .orElse(null);
+        Cookie roomCookie = WebUtils.getCookie(request, ROOM_COOKIE);
+        boolean joining = roomId == null && JOIN_PATH.equals(path) && "POST".equals(request.getMethod())
+                && StringUtils.hasText(request.getParameter("roomId"));
+        if (joining) {
+            roomId = request.getParameter("roomId").trim();
+        } else if (playerPath && roomCookie != null) {
+            roomId = roomCookie.getValue();
+        }
+        if (roomId == null || clusterService.isLocal(roomId)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        // a player moving to a room on another node leaves the room held here first
+        Cookie cookie = WebUtils.getCookie(request, "COOKIE");
+        if (joining && cookie != null && roomCookie != null && clusterService.isLocal(roomCookie.getValue())) {
+            roomService.removeUser(cookie.getValue());
+        }
+        ClusterNode owner = clusterService.ownerOf(roomId);
+        try {
+            proxy.forward(request, response, owner, pathMatcher.match(STREAM_PATH, path));
+        } catch (IOException e) {
+            Events.error("cluster.forward-failed", e, "room", roomId, "owner", owner);
+            if (!response.isCommitted()) {
+                response.sendError(HttpStatus.BAD_GATEWAY.value());
+            }
+        }
+    }
+
+    // trusts the certificate of the key store, which every node serves
+    private SSLSocketFactory sslSocketFactory() {
+        try (InputStream in = ResourceUtils.getURL(keyStore).openStream()) {
+            KeyStore store = KeyStore.getInstance(keyStoreType);
+            store.load(in, keyStorePassword.toCharArray());
+            TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            trustManagers.init(store);
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, trustManagers.getTrustManagers(), null);
+            return context.getSocketFactory();
+        } catch (IOException | GeneralSecurityException e) {
+            throw new IllegalStateException("Nie można wczytać magazynu kluczy " + keyStore, e);
+        }
+    }
+}
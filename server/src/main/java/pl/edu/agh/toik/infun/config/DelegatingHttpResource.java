@@ -0,0 +1,97 @@
+package pl.edu.agh.toik.infun.config;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.resource.HttpResource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+
+/**
+ * Resource resolved further down the chain with one extra response header.
+ */
+class DelegatingHttpResource extends AbstractResource implements HttpResource {
+    private final Resource resource;
+    private final String headerName;
+    private final String headerValue;
+
+    DelegatingHttpResource(Resource resource, String headerName, String headerValue) {
+        this.resource = resource;
+        this.headerName = headerName;
+        this.headerValue = headerValue;
+    }
+
+    @Override
+    public HttpHeaders getResponseHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        if (resource instanceof HttpResource) {
+            headers.putAll(((HttpResource) resource).getResponseHeaders());
+        }
+        headers.set(headerName, headerValue);
+        return headers;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return resource.getInputStream();
+    }
+
+    @Override
+    public boolean exists() {
+        return resource.exists();
+    }
+
+    @Override
+    public boolean isReadable() {
+        return resource.isReadable();
+    }
+
+    @Override
+    public boolean isFile() {
+        return resource.isFile();
+    }
+
+    @Override
+    public URL getURL() throws IOException {
+        return resource.getURL();
+    }
+
+    @Override
+    public URI getURI() throws IOException {
+        return resource.getURI();
+    }
+
+    @Override
+    public File getFile() throws IOException {
+        return resource.getFile();
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        return resource.contentLength();
+    }
+
+    @Override
+    public long lastModified() throws IOException {
+        return resource.lastModified();
+    }
+
+    @Override
+    public Resource createRelative(String relativePath) throws IOException {
+        return resource.createRelative(relativePath);
+    }
+
+    @Override
+    public String getFilename() {
+        return resource.getFilename();
+    }
+
+    @Override
+    public String getDescription() {
+        return resource.getDescription();
+    }
+}
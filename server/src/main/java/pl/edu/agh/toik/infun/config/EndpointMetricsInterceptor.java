@@ -0,0 +1,57 @@
+package pl.edu.agh.toik.infun.config;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+import pl.edu.agh.toik.infun.controllers.InfunController;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Times every {@link InfunController} request with a timer per method and mapping, e.g.
+ * {@code InfunController.GET /{task_name}/config}, which gives both the latency histogram and the
+ * request rate. Asynchronous requests (the result stream) are timed until the handler returns.
+ */
+public class EndpointMetricsInterceptor extends HandlerInterceptorAdapter {
+    private static final String CONTEXT = EndpointMetricsInterceptor.class.getName() + ".context";
+
+    private final MetricRegistry metricRegistry;
+
+    public EndpointMetricsInterceptor(MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (request.getDispatcherType() == DispatcherType.REQUEST
+                && handler instanceof HandlerMethod
+                && ((HandlerMethod) handler).getBeanType() == InfunController.class) {
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            Timer timer = metricRegistry.timer(MetricRegistry.name(InfunController.class, request.getMethod() + " " + pattern));
+            request.setAttribute(CONTEXT, timer.time());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        stop(request);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        stop(request);
+    }
+
+    private static void stop(HttpServletRequest request) {
+        Object context = request.getAttribute(CONTEXT);
+        if (context != null) {
+            request.removeAttribute(CONTEXT);
+            ((Timer.Context) context).stop();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package pl.edu.agh.toik.infun.config;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.servlet.resource.AbstractResourceResolver;
+import org.springframework.web.servlet.resource.ResourceResolverChain;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Resolves {@code name-<md5>.ext} URLs using the content hashes written by AssetPipeline
+ * and serves them as immutable. Hashes missing from the manifest (e.g. when running without
+ * the build step) are computed on first use.
+ */
+public class FingerprintResourceResolver extends AbstractResourceResolver {
+    public static final String MANIFEST = "asset-manifest.properties";
+
+    private static final Pattern FINGERPRINT = Pattern.compile("^(.*)-([0-9a-f]{32})(\\.[^./]*)?$");
+    private static final String IMMUTABLE = CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().getHeaderValue() + ", immutable";
+
+    private final Map<String, String> hashes = new ConcurrentHashMap<>();
+
+    public FingerprintResourceResolver() {
+        try {
+            Properties manifest = PropertiesLoaderUtils.loadProperties(new ClassPathResource(MANIFEST));
+            manifest.stringPropertyNames().forEach(path -> hashes.put(path, manifest.getProperty(path)));
+        } catch (IOException e) {
+            logger.info("No " + MANIFEST + " on the classpath, asset hashes will be computed at runtime");
+        }
+    }
+
+    @Override
+    protected Resource resolveResourceInternal(HttpServletRequest request, String requestPath, List<? extends Resource> locations, ResourceResolverChain chain) {
+        Matcher matcher = FINGERPRINT.matcher(requestPath);
+        if (matcher.matches()) {
+            String plainPath = matcher.group(1) + (matcher.group(3) != null ? matcher.group(3) : "");
+            if (matcher.group(2).equals(hashOf(plainPath, locations))) {
+                Resource resource = chain.resolveResource(request, plainPath, locations);
+                if (resource != null) {
+                    return new DelegatingHttpResource(resource, HttpHeaders.CACHE_CONTROL, IMMUTABLE);
+                }
+            }
+        }
+        return chain.resolveResource(request, requestPath, locations);
+    }
+
+    @Override
+    protected String resolveUrlPathInternal(String resourceUrlPath, List<? extends Resource> locations, ResourceResolverChain chain) {
+        String baseUrl = chain.resolveUrlPath(resourceUrlPath, locations);
+        if (baseUrl == null) {
+            return null;
+        }
+        String hash = hashOf(resourceUrlPath, locations);
+        if (hash == null) {
+            return baseUrl;
+        }
+        String extension = StringUtils.getFilenameExtension(baseUrl);
+        return extension == null
+                ? baseUrl + "-" + hash
+                : baseUrl.substring(0, baseUrl.length() - extension.length() - 1) + "-" + hash + "." + extension;
+    }
+
+    // same lookup order as PathResourceResolver: the first location containing the path wins
+    private String hashOf(String path, List<? extends Resource> locations) {
+        for (Resource location : locations) {
+            if (!(location instanceof ClassPathResource)) {
+                continue;
+            }
+            try {
+                ClassPathResource resource = (ClassPathResource) location.createRelative(path);
+                String hash = hashes.get(resource.getPath());
+                if (hash == null && resource.isReadable()) {
+                    try (InputStream content = resource.getInputStream()) {
+                        hash = DigestUtils.md5DigestAsHex(content);
+                    }
+                    hashes.put(resource.getPath(), hash);
+                }
+                if (hash != null) {
+                    return hash;
+                }
+            } catch (IOException e) {
+                logger.debug("Cannot hash " + path + " in " + location, e);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,94 @@
+package pl.edu.agh.toik.infun.config;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.servlet.resource.AbstractResourceResolver;
+import org.springframework.web.servlet.resource.ResourceResolverChain;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Picks a downscaled variant of a heavy image, written at build time by AssetPipeline, from the
+ * {@code w} request parameter, which the pages set from the window width and device pixel ratio.
+ * The width is part of the URL, so HTTP caches need no Vary, and each variant has its own path,
+ * so the caching resolver below keeps one entry per variant.
+ */
+public class ImageVariantResourceResolver extends AbstractResourceResolver {
+    public static final String MANIFEST = "image-variants.properties";
+
+    private static final String WIDTH_PARAMETER = "w";
+
+    // classpath path of an image -> available variant widths, ascending
+    private final Map<String, List<Integer>> variants = new HashMap<>();
+
+    public ImageVariantResourceResolver() {
+        try {
+            Properties manifest = PropertiesLoaderUtils.loadProperties(new ClassPathResource(MANIFEST));
+            for (String path : manifest.stringPropertyNames()) {
+                List<Integer> widths = new ArrayList<>();
+                for (String width : StringUtils.commaDelimitedListToStringArray(manifest.getProperty(path))) {
+                    widths.add(Integer.valueOf(width.trim()));
+                }
+                Collections.sort(widths);
+                variants.put(path, widths);
+            }
+        } catch (IOException e) {
+            logger.info("No " + MANIFEST + " on the classpath, images will be served at full size");
+        }
+    }
+
+    public static String variantPath(String path, int width) {
+        String extension = StringUtils.getFilenameExtension(path);
+        return extension == null
+                ? path + "-" + width + "w"
+                : path.substring(0, path.length() - extension.length() - 1) + "-" + width + "w." + extension;
+    }
+
+    @Override
+    protected Resource resolveResourceInternal(HttpServletRequest request, String requestPath, List<? extends Resource> locations, ResourceResolverChain chain) {
+        if (request != null && !variants.isEmpty()) {
+            int width = requestedWidth(request);
+            List<Integer> widths = width > 0 ? variantWidths(requestPath, locations) : null;
+            if (widths != null) {
+                Optional<Integer> variant = widths.stream().filter(w -> w >= width).findFirst();
+                return chain.resolveResource(request, variant.map(w -> variantPath(requestPath, w)).orElse(requestPath), locations);
+            }
+        }
+        return chain.resolveResource(request, requestPath, locations);
+    }
+
+    @Override
+    protected String resolveUrlPathInternal(String resourceUrlPath, List<? extends Resource> locations, ResourceResolverChain chain) {
+        return chain.resolveUrlPath(resourceUrlPath, locations);
+    }
+
+    // requested width in device pixels, 0 when the URL asks for none
+    private int requestedWidth(HttpServletRequest request) {
+        String parameter = request.getParameter(WIDTH_PARAMETER);
+        try {
+            return parameter != null ? Integer.parseInt(parameter) : 0;
+        } catch (NumberFormatException ignored) {
+            return 0;
+        }
+    }
+
+    // same lookup order as PathResourceResolver: the first location containing the path wins
+    private List<Integer> variantWidths(String path, List<? extends Resource> locations) {
+        for (Resource location : locations) {
+            if (location instanceof ClassPathResource) {
+                try {
+                    List<Integer> widths = variants.get(((ClassPathResource) location.createRelative(path)).getPath());
+                    if (widths != null) {
+                        return widths;
+                    }
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        return null;
+    }
+}
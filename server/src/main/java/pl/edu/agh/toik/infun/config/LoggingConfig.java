@@ -0,0 +1,35 @@
+package pl.edu.agh.toik.infun.config;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import pl.edu.agh.toik.infun.logging.EventLogger;
+import pl.edu.agh.toik.infun.logging.Events;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+@Configuration
+public class LoggingConfig {
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    @Value("${infun.log.buffer-size:8192}")
+    private int bufferSize;
+
+    @Value("${infun.log.rate-per-second:50}")
+    private int ratePerSecond;
+
+    @PostConstruct
+    public void init() {
+        Events.use(new EventLogger(bufferSize, ratePerSecond));
+        metricRegistry.register(MetricRegistry.name(EventLogger.class, "dropped"), (Gauge<Long>) () -> Events.logger().getDropped());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        Events.logger().stop();
+    }
+}
@@ -0,0 +1,33 @@
+package pl.edu.agh.toik.infun.config;
+
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One registry for the whole server, published over JMX in the {@code infun} domain and scraped
+ * as JSON from {@code /metrics}.
+ */
+@Configuration
+public class MetricsConfig {
+    public static final String JMX_DOMAIN = "infun";
+
+    @Bean
+    public MetricRegistry metricRegistry() {
+        return new MetricRegistry();
+    }
+
+    @Bean(destroyMethod = "stop")
+    public JmxReporter jmxReporter(MetricRegistry metricRegistry) {
+        JmxReporter reporter = JmxReporter.forRegistry(metricRegistry)
+                .inDomain(JMX_DOMAIN)
+                .convertRatesTo(TimeUnit.SECONDS)
+                .convertDurationsTo(TimeUnit.MILLISECONDS)
+                .build();
+        reporter.start();
+        return reporter;
+    }
+}
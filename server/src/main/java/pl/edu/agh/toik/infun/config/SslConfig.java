@@ -20,9 +20,23 @@ public class SslConfig {
     @Value("${server.port}")
     private int httpsPort;
 
+    /**
+     * Everything is served over https, the plain http connector only sends browsers there, so
+     * players stay on one origin and keep their cookies and TLS session.
+     */
     @Bean
     public ServletWebServerFactory servletContainer() {
-        TomcatServletWebServerFactory tomcat = new TomcatServletWebServerFactory();
+        TomcatServletWebServerFactory tomcat = new TomcatServletWebServerFactory() {
+            @Override
+            protected void postProcessContext(Context context) {
+                SecurityConstraint securityConstraint = new SecurityConstraint();
+                securityConstraint.setUserConstraint("CONFIDENTIAL");
+                SecurityCollection collection = new SecurityCollection();
+                collection.addPattern("/*");
+                securityConstraint.addCollection(collection);
+                context.addConstraint(securityConstraint);
+            }
+        };
         tomcat.addAdditionalTomcatConnectors(httpConnector());
         return tomcat;
     }
@@ -31,6 +45,8 @@ public class SslConfig {
         Connector connector = new Connector(TomcatServletWebServerFactory.DEFAULT_PROTOCOL);
         connector.setScheme("http");
         connector.setPort(httpPort);
+        connector.setSecure(false);
+        connector.setRedirectPort(httpsPort);
         return connector;
     }
 }
@@ -0,0 +1,87 @@
+package pl.edu.agh.toik.infun.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.exceptions.TemplateProcessingException;
+import pl.edu.agh.toik.infun.model.requests.TaskConfig;
+import pl.edu.agh.toik.infun.services.IFolderScanService;
+
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parses every task and page template once at startup so the first player hitting a task
+ * doesn't pay for it. Templates are cached when parsed, before processing, so templates that
+ * need a web request to render are cached as well.
+ */
+@Component
+public class TemplatePrewarmer {
+    private static final List<String> PAGES = Arrays.asList(
+            "join_room", "create_room", "manage", "task_result", "end", "qrcode", "error_view", "error_view_custom");
+
+    @Autowired
+    private ITemplateEngine templateEngine;
+
+    @Autowired
+    private IFolderScanService folderScanService;
+
+    @Value("${spring.thymeleaf.cache:true}")
+    private boolean templateCache;
+
+    @Value("${infun.templates.prewarm:false}")
+    private boolean prewarm;
+
+    public TemplatePrewarmer() {
+    }
+
+    /**
+     * Wires the prewarmer by hand, without Spring, with caching and prewarming on.
+     */
+    public TemplatePrewarmer(ITemplateEngine templateEngine, IFolderScanService folderScanService) {
+        this.templateEngine = templateEngine;
+        this.folderScanService = folderScanService;
+        this.templateCache = true;
+        this.prewarm = true;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void prewarm() {
+        if (!templateCache || !prewarm) {
+            return;
+        }
+        for (TaskConfig task : folderScanService.getTaskConfigs()) {
+            parse(task.getName() + "/index");
+        }
+        PAGES.forEach(this::parse);
+    }
+
+    private void parse(String template) {
+        try {
+            templateEngine.process(template, new Context(), NullWriter.INSTANCE);
+        } catch (TemplateProcessingException ignored) {
+            // the template needs a request or model to render, it's parsed and cached anyway
+        }
+    }
+
+    private static class NullWriter extends Writer {
+        private static final NullWriter INSTANCE = new NullWriter();
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -1,19 +1,28 @@
 package pl.edu.agh.toik.infun.config;
 
+import com.codahale.metrics.MetricRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.CacheControl;
 import org.springframework.util.ResourceUtils;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
-import org.springframework.web.servlet.resource.GzipResourceResolver;
+import org.springframework.web.servlet.resource.CachingResourceResolver;
+import org.springframework.web.servlet.resource.EncodedResourceResolver;
 import org.springframework.web.servlet.resource.PathResourceResolver;
+import org.springframework.web.servlet.resource.ResourceUrlEncodingFilter;
 import org.thymeleaf.templatemode.TemplateMode;
 import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+import pl.edu.agh.toik.infun.logging.Events;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
@@ -23,19 +32,61 @@ import java.util.stream.Collectors;
 @EnableWebMvc
 public class WebConfig extends WebMvcConfigurerAdapter {
 
+    private final FingerprintResourceResolver fingerprintResourceResolver = new FingerprintResourceResolver();
+
+    private final ImageVariantResourceResolver imageVariantResourceResolver = new ImageVariantResourceResolver();
+
+    private final AssetPack assetPack = loadAssetPack();
+
+    @Value("${spring.thymeleaf.cache:true}")
+    private boolean templateCache;
+
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new EndpointMetricsInterceptor(metricRegistry));
+    }
+
     @Override
     public void addResourceHandlers(ResourceHandlerRegistry registry) {
-        registry.addResourceHandler("/js/**").addResourceLocations("classpath:/tasks/", "classpath:/static/js/").setCacheControl(CacheControl.maxAge(10, TimeUnit.MINUTES)).resourceChain(false).addResolver(new GzipResourceResolver()).addResolver(new PathResourceResolver());
-        registry.addResourceHandler("/css/**").addResourceLocations("classpath:/tasks/", "classpath:/static/css/").setCacheControl(CacheControl.maxAge(10, TimeUnit.MINUTES)).resourceChain(false).addResolver(new GzipResourceResolver()).addResolver(new PathResourceResolver());
-        registry.addResourceHandler("/img/**").addResourceLocations("classpath:/tasks/", "classpath:/static/img/").setCacheControl(CacheControl.maxAge(10, TimeUnit.MINUTES)).resourceChain(false).addResolver(new GzipResourceResolver()).addResolver(new PathResourceResolver());
-        registry.addResourceHandler("/lib/**").addResourceLocations("classpath:/tasks/", "classpath:/static/lib/").setCacheControl(CacheControl.maxAge(10, TimeUnit.MINUTES)).resourceChain(false).addResolver(new GzipResourceResolver()).addResolver(new PathResourceResolver());
+        addAssetHandler(registry, "/js/**", "classpath:/tasks/", "classpath:/static/js/");
+        addAssetHandler(registry, "/css/**", "classpath:/tasks/", "classpath:/static/css/");
+        addAssetHandler(registry, "/img/**", "classpath:/tasks/", "classpath:/static/img/");
+        addAssetHandler(registry, "/lib/**", "classpath:/tasks/", "classpath:/static/lib/");
 
-        registry.addResourceHandler("/tasks/**/js/**").addResourceLocations(listCompo("js")).setCacheControl(CacheControl.maxAge(10, TimeUnit.MINUTES)).resourceChain(false).addResolver(new GzipResourceResolver()).addResolver(new PathResourceResolver());
-        registry.addResourceHandler("/tasks/**/css/**").addResourceLocations(listCompo("css")).setCacheControl(CacheControl.maxAge(10, TimeUnit.MINUTES)).resourceChain(false).addResolver(new GzipResourceResolver()).addResolver(new PathResourceResolver());
-        registry.addResourceHandler("/tasks/**/img/**").addResourceLocations(listCompo("img")).setCacheControl(CacheControl.maxAge(10, TimeUnit.MINUTES)).resourceChain(false).addResolver(new GzipResourceResolver()).addResolver(new PathResourceResolver());
-        registry.addResourceHandler("/tasks/**/lib/**").addResourceLocations(listCompo("lib")).setCacheControl(CacheControl.maxAge(10, TimeUnit.MINUTES)).resourceChain(false).addResolver(new GzipResourceResolver()).addResolver(new PathResourceResolver());
+        addAssetHandler(registry, "/tasks/**/js/**", listCompo("js"));
+        addAssetHandler(registry, "/tasks/**/css/**", listCompo("css"));
+        addAssetHandler(registry, "/tasks/**/img/**", listCompo("img"));
+        addAssetHandler(registry, "/tasks/**/lib/**", listCompo("lib"));
+
+    }
 
+    // fingerprinted URLs get immutable caching from FingerprintResourceResolver, precompressed and downscaled
+    // variants come from the build; the cache sits below the image variant resolver so each variant has its own entry
+    private void addAssetHandler(ResourceHandlerRegistry registry, String pattern, String... locations) {
+        registry.addResourceHandler(pattern)
+                .addResourceLocations(locations)
+                .setCacheControl(CacheControl.maxAge(10, TimeUnit.MINUTES))
+                .resourceChain(false)
+                .addResolver(imageVariantResourceResolver)
+                .addResolver(new CachingResourceResolver(new ConcurrentMapCache(pattern)))
+                .addResolver(fingerprintResourceResolver)
+                .addResolver(new EncodedResourceResolver())
+                .addResolver(new AssetPackResourceResolver(assetPack, locations))
+                .addResolver(new PathResourceResolver());
     }
+
+    private static AssetPack loadAssetPack() {
+        try {
+            return AssetPack.load();
+        } catch (IOException e) {
+            Events.error("assets.pack-unreadable", e);
+            return AssetPack.empty();
+        }
+    }
+
     private String[] listCompo(String suffix) {
         ArrayList<String> res = new ArrayList<>(Arrays.asList("classpath:/tasks/", "classpath:/static/" + suffix + "/"));
         try {
@@ -54,13 +105,21 @@ public class WebConfig extends WebMvcConfigurerAdapter {
         return res.toArray(new String[]{});
     }
 
+    @Bean
+    public ResourceUrlEncodingFilter resourceUrlEncodingFilter() {
+        return new ResourceUrlEncodingFilter();
+    }
+
     @Bean
     public ClassLoaderTemplateResolver yourTemplateResolver() {
         ClassLoaderTemplateResolver yourTemplateResolver = new ClassLoaderTemplateResolver();
         yourTemplateResolver.setPrefix("tasks/");
         yourTemplateResolver.setSuffix(".html");
-        yourTemplateResolver.setCacheTTLMs(0L);
-        yourTemplateResolver.setCacheable(false);
+        // same switch as the spring boot resolver: devtools turns it off, the prod profile on
+        yourTemplateResolver.setCacheable(templateCache);
+        if (!templateCache) {
+            yourTemplateResolver.setCacheTTLMs(0L);
+        }
         yourTemplateResolver.setTemplateMode(TemplateMode.HTML);
         yourTemplateResolver.setCharacterEncoding("UTF-8");
         yourTemplateResolver.setOrder(0);  // this is important. This way spring boot will listen to both places 0 and 1
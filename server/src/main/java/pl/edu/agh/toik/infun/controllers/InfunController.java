@@ -1,30 +1,57 @@
 package pl.edu.agh.toik.infun.controllers;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.util.WebUtils;
+import pl.edu.agh.toik.infun.config.ClusterRoutingFilter;
 import pl.edu.agh.toik.infun.exceptions.*;
-import pl.edu.agh.toik.infun.model.ConfigDTO;
+import pl.edu.agh.toik.infun.logging.Events;
 import pl.edu.agh.toik.infun.model.Room;
+import pl.edu.agh.toik.infun.model.TaskConfigResponse;
+import pl.edu.agh.toik.infun.model.domain.AgeGroup;
+import pl.edu.agh.toik.infun.model.domain.ArchivedRoom;
+import pl.edu.agh.toik.infun.model.domain.ExportFormat;
+import pl.edu.agh.toik.infun.model.domain.ExportRows;
+import pl.edu.agh.toik.infun.model.domain.ScoreDistribution;
 import pl.edu.agh.toik.infun.model.domain.TaskResult;
 import pl.edu.agh.toik.infun.model.domain.UserResult;
 import pl.edu.agh.toik.infun.model.requests.CreateRoomInput;
 import pl.edu.agh.toik.infun.model.requests.JoinRoomInput;
 import pl.edu.agh.toik.infun.model.requests.LastResultResponse;
 import pl.edu.agh.toik.infun.model.requests.TaskConfig;
+import pl.edu.agh.toik.infun.services.IClusterService;
 import pl.edu.agh.toik.infun.services.IFolderScanService;
+import pl.edu.agh.toik.infun.services.ILeaderboardStreamService;
+import pl.edu.agh.toik.infun.services.IResultIngestService;
+import pl.edu.agh.toik.infun.services.IResultsExportService;
+import pl.edu.agh.toik.infun.services.IRobotService;
+import pl.edu.agh.toik.infun.services.IRoomArchiveService;
 import pl.edu.agh.toik.infun.services.IRoomService;
+import pl.edu.agh.toik.infun.services.IRoutingService;
+import pl.edu.agh.toik.infun.services.IScoreAnalyticsService;
 
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.net.InetAddress;
-import java.net.UnknownHostException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 
 import static pl.edu.agh.toik.infun.utils.InFunUtils.*;
@@ -38,6 +65,33 @@ public class InfunController {
     @Autowired
     IFolderScanService folderScanService;
 
+    @Autowired
+    ILeaderboardStreamService leaderboardStreamService;
+
+    @Autowired
+    IResultIngestService resultIngestService;
+
+    @Autowired
+    IClusterService clusterService;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    IRoutingService routingService;
+
+    @Autowired
+    IRobotService robotService;
+
+    @Autowired
+    IRoomArchiveService roomArchiveService;
+
+    @Autowired
+    IResultsExportService resultsExportService;
+
+    @Autowired
+    IScoreAnalyticsService scoreAnalyticsService;
+
     @RequestMapping("/")
     String main() {
         return "redirect:/room/join";
@@ -46,19 +100,24 @@ public class InfunController {
     @GetMapping("/room/create")
     String createRoom(HttpServletRequest request, Model model) {
         if(isLocalhost(request.getLocalAddr())){
-            return redirectToHttps("/room/create");
+            return "redirect:" + routingService.externalUrl("/room/create");
         }
-        CreateRoomInput createRoomInput = new CreateRoomInput(roomService.createDefaultTasksConfig(
-                folderScanService.scanFolder())
-        );
+        CreateRoomInput createRoomInput = new CreateRoomInput(folderScanService.getTaskConfigs());
         model.addAttribute("createRoomInput", createRoomInput);
         return "create_room";
     }
 
+    @PostMapping("/tasks/reload")
+    String reloadTasks(HttpServletRequest request) throws AccessDeniedException {
+        checkFromServerHost(request, "Zadania można przeładować tylko z komputera, na którym działa serwer");
+        folderScanService.reload();
+        return "redirect:/room/create";
+    }
+
     @GetMapping(value = "/room/join")
     String joinRoom(HttpServletRequest request, HttpServletResponse response, Model model) {
         if(isLocalhost(request.getLocalAddr())){
-            return redirectToHttps("/room/join");
+            return "redirect:" + routingService.externalUrl("/room/join");
         }
         Cookie cookie = WebUtils.getCookie(request, "COOKIE");
 
@@ -73,6 +132,7 @@ public class InfunController {
             model.addAttribute("existingGameId", joinedRooms.get(0).getId());
         }
         model.addAttribute("joinRoomInput", new JoinRoomInput());
+        resultIngestService.awaitApplied(cookie.getValue());
         try {
             roomService.getNextTask(cookie.getValue());
             model.addAttribute("allGamesFinished", false);
@@ -83,50 +143,55 @@ public class InfunController {
     }
 
     @PostMapping(value = "/room/join")
-    String getTask(@ModelAttribute JoinRoomInput joinRoomInput, @CookieValue("COOKIE") String cookie, Model model) throws UserAlreadyExistsException, NoSuchRoomException {
+    String getTask(@ModelAttribute JoinRoomInput joinRoomInput, @CookieValue("COOKIE") String cookie, HttpServletResponse response, Model model) throws UserAlreadyExistsException, NoSuchRoomException {
         roomService.removeUser(cookie);
         roomService.addUser(joinRoomInput.nick, joinRoomInput.age, joinRoomInput.roomId, cookie);
+        Cookie roomCookie = new Cookie(ClusterRoutingFilter.ROOM_COOKIE, joinRoomInput.roomId);
+        roomCookie.setPath("/");
+        response.addCookie(roomCookie);
         return "redirect:/tasks/new";
     }
 
     @GetMapping("/tasks/new")
     public String getNextTask(@CookieValue("COOKIE") String cookie) throws NoUserCookieFoundException {
+        resultIngestService.awaitApplied(cookie);
         try {
-            String nextTask = roomService.getNextTask(cookie);
-            if (nextTask.equals("robot")) {
-                return redirectToHttp("/tasks/next?type=robot");
-            }
-            return redirectToHttps("/tasks/next?type=normal");
+            roomService.getNextTask(cookie);
+            return "redirect:/tasks/next";
         } catch (NoMoreAvailableTasksException e) {
-            e.printStackTrace();
             return "redirect:/end";
         }
     }
 
     @GetMapping("/tasks/next")
-    public String robotGame(@CookieValue("COOKIE") String cookie, @RequestParam String type) throws NoUserCookieFoundException{
+    public String nextTask(@CookieValue("COOKIE") String cookie) throws NoUserCookieFoundException {
+        resultIngestService.awaitApplied(cookie);
         try {
-            String nextTask =  roomService.getNextTask(cookie);
-            if(nextTask.equals("robot") && type.equals("robot")){
-                return "robot/index";
-            } else if(type.equals("normal")) {
-                return nextTask + "/index";
-            }
+            return roomService.getNextTask(cookie) + "/index";
         } catch (NoMoreAvailableTasksException e) {
-            e.printStackTrace();
             return "redirect:/end";
         }
-        return "redirect:/room/join";
+    }
 
+    @GetMapping("/robot/control")
+    @ResponseBody
+    ResponseEntity<String> controlRobot(@CookieValue("COOKIE") String cookie, @RequestParam Map<String, String> command) throws NoUserCookieFoundException {
+        try {
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(robotService.control(cookie, command));
+        } catch (AccessDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .contentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8))
+                    .body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY)
+                    .contentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8))
+                    .body("Brak połączenia z robotem");
+        }
     }
 
     @PostMapping("/manage")
     String manage(@ModelAttribute("createRoomInput") CreateRoomInput createRoomInput, @CookieValue("JSESSIONID") String cookie, Model model) throws RoomAlreadyExistsException, NoGameSelectedException {
         List<TaskConfig> userChoice = createRoomInput.getTasksConfig();
-        String roomId = createRoomInput.getRoomId();
-        if (roomId == null || roomId.trim().equals("")) {
-            roomId = roomService.generateRandomRoomId();
-        }
         List<TaskConfig> filteredConfigs = userChoice.stream().filter(taskConfig -> taskConfig.name != null).collect(Collectors.toList());
 
         if (filteredConfigs.size() == 0) {
@@ -135,12 +200,29 @@ public class InfunController {
             model.addAttribute("link_name", "Powrót");
             return "error_view_custom";
         }
+        if (createRoomInput.getTaskNumber() < 1 || createRoomInput.getTaskNumber() > Room.MAX_TASK_NUMBER) {
+            model.addAttribute("error", String.format("Ilość zadań musi być z przedziału [1, %d].", Room.MAX_TASK_NUMBER));
+            model.addAttribute("link", "/room/create");
+            model.addAttribute("link_name", "Powrót");
+            return "error_view_custom";
+        }
         List<TaskConfig> configs = new ArrayList<>();
         for (TaskConfig taskConfig : filteredConfigs) {
             configs.add(new TaskConfig(taskConfig.name.trim(), taskConfig.config == null ? new ArrayList<>() : taskConfig.config));
         }
 
-        roomService.addRoom(new Room(roomId, configs, cookie, createRoomInput.getTaskNumber()));
+        String roomId = createRoomInput.getRoomId();
+        if (roomId == null || roomId.trim().equals("")) {
+            roomId = roomService.generateRandomRoomId();
+        } else if (!clusterService.isLocal(roomId.trim())) {
+            model.addAttribute("error", String.format("Pokój o id='%s' musi zostać utworzony na innym serwerze. Wybierz inne id lub zostaw pole puste.", roomId));
+            model.addAttribute("link", "/room/create");
+            model.addAttribute("link_name", "Powrót");
+            return "error_view_custom";
+        }
+
+        roomService.addRoom(new Room(roomId, configs, cookie, createRoomInput.getTaskNumber(),
+                ThreadLocalRandom.current().nextLong(), createRoomInput.isPerPlayerTasks()));
         return "redirect:/manage/" + roomId;
     }
 
@@ -157,19 +239,51 @@ public class InfunController {
         return "manage";
     }
 
+    // games ask on every load, a client that has the config already only gets a 304; there is no
+    // Last-Modified, so browsers always revalidate the cached copy
     @RequestMapping(value = "/{task_name}/config")
     @ResponseBody
-    ConfigDTO getConfig(@PathVariable(value = "task_name") final String taskName, @CookieValue("COOKIE") String cookie) throws NoUserCookieFoundException {
-        return roomService.getConfig(taskName, cookie);
+    ResponseEntity<byte[]> getConfig(@PathVariable(value = "task_name") final String taskName, @CookieValue("COOKIE") String cookie, WebRequest request) throws NoUserCookieFoundException {
+        TaskConfigResponse config = roomService.getConfigResponse(taskName, cookie);
+        if (request.checkNotModified(config.getETag())) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(config.getETag())
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .body(config.body());
     }
 
 
-    @PostMapping(value = "/{task_name}/end")
+    @PostMapping(value = "/{task_name}/end", consumes = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
-    public String endGame(@PathVariable(value = "task_name") final String taskName, @RequestBody TaskResult taskResult, @CookieValue("COOKIE") String cookie, Model model) throws NoSuchRoomException, NoUserCookieFoundException {
-        roomService.addResult(taskName, cookie, taskResult.getNick(), taskResult.getRoom(), taskResult.getResult());
-        model.addAttribute("result", taskResult);
-        return "/task_result";
+    public ResponseEntity<String> endGame(@PathVariable(value = "task_name") final String taskName, @RequestBody TaskResult taskResult, @CookieValue("COOKIE") String cookie) throws NoSuchRoomException, NoUserCookieFoundException, WrongTaskException {
+        return submitResults(taskName, cookie, Collections.singletonList(taskResult), "/task_result");
+    }
+
+    // navigator.sendBeacon posts a string body as text/plain
+    @PostMapping(value = "/{task_name}/end", consumes = MediaType.TEXT_PLAIN_VALUE)
+    @ResponseBody
+    public ResponseEntity<String> endGameBeacon(@PathVariable(value = "task_name") final String taskName, @RequestBody String body, @CookieValue("COOKIE") String cookie) throws IOException, NoSuchRoomException, NoUserCookieFoundException, WrongTaskException {
+        return submitResults(taskName, cookie, Collections.singletonList(objectMapper.readValue(body, TaskResult.class)), "");
+    }
+
+    @PostMapping(value = "/results/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.TEXT_PLAIN_VALUE})
+    @ResponseBody
+    public ResponseEntity<String> endGames(@RequestBody String body, @CookieValue("COOKIE") String cookie) throws IOException, NoSuchRoomException, NoUserCookieFoundException, WrongTaskException {
+        List<TaskResult> results = objectMapper.readValue(body, new TypeReference<List<TaskResult>>() {});
+        return submitResults(null, cookie, results, "/task_result");
+    }
+
+    private ResponseEntity<String> submitResults(String taskName, String cookie, List<TaskResult> results, String next) throws NoSuchRoomException, NoUserCookieFoundException, WrongTaskException {
+        try {
+            resultIngestService.submit(taskName, cookie, results);
+            return ResponseEntity.ok(next);
+        } catch (ResultQueueFullException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(e.getMessage());
+        }
     }
 
     @GetMapping(value = "/task_result")
@@ -179,6 +293,7 @@ public class InfunController {
 
     @GetMapping(value = "/end")
     String end(@CookieValue("COOKIE") String cookie, Model model) {
+        resultIngestService.awaitApplied(cookie);
         model.addAttribute("result", roomService.getLastResults(cookie).getScore());
         return "end";
     }
@@ -191,13 +306,77 @@ public class InfunController {
 
     @RequestMapping("/{room_id}/results")
     @ResponseBody
-    List<UserResult> getResults(@PathVariable(value = "room_id") final String roomId, @CookieValue("JSESSIONID") String cookie) throws NoSuchRoomException, AccessDeniedException {
-        return roomService.getResults(roomId, cookie);
+    List<UserResult> getResults(@PathVariable(value = "room_id") final String roomId,
+                                @CookieValue("JSESSIONID") String cookie,
+                                @RequestParam(value = "offset", defaultValue = "0") int offset,
+                                @RequestParam(value = "limit", required = false) Integer limit) throws NoSuchRoomException, AccessDeniedException {
+        return roomService.getResults(roomId, cookie, offset, limit == null ? Integer.MAX_VALUE : limit);
+    }
+
+    @GetMapping("/{room_id}/results/stream")
+    @ResponseBody
+    SseEmitter streamResults(@PathVariable(value = "room_id") final String roomId, @CookieValue("JSESSIONID") String cookie) throws NoSuchRoomException, AccessDeniedException {
+        Room room = roomService.getRoomById(roomId)
+                .orElseThrow(() -> new NoSuchRoomException("Nie ma pokoju z id = " + roomId));
+        if (!room.getCreatorCookie().equals(cookie)) {
+            throw new AccessDeniedException("Nie można pobrać wyników ze względu na niewłaściwe ciasteczko");
+        }
+        return leaderboardStreamService.subscribe(room);
+    }
+
+    @GetMapping("/results/export")
+    ResponseEntity<StreamingResponseBody> exportResults(@CookieValue("JSESSIONID") String cookie,
+                                                        @RequestParam(value = "room", required = false) List<String> roomIds,
+                                                        @RequestParam(value = "format", defaultValue = "csv") String format,
+                                                        @RequestParam(value = "rows", defaultValue = "tasks") String rows) throws WrongExportFormatException, NoSuchRoomException, AccessDeniedException {
+        ExportFormat exportFormat = ExportFormat.parse(format);
+        ExportRows exportRows = ExportRows.parse(rows);
+        List<String> exported = resultsExportService.exportableRoomIds(cookie, roomIds);
+        StreamingResponseBody body = out -> resultsExportService.export(exported, exportFormat, exportRows, out);
+        return ResponseEntity.ok()
+                .contentType(exportFormat.getMediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"results." + exportFormat.getExtension() + "\"")
+                .body(body);
+    }
+
+    @GetMapping("/analytics/scores")
+    @ResponseBody
+    List<ScoreDistribution> getScoreDistributions(@CookieValue("JSESSIONID") String cookie,
+                                                  @RequestParam(value = "room", required = false) List<String> roomIds,
+                                                  @RequestParam(value = "task", required = false) String task,
+                                                  @RequestParam(value = "age", required = false) String age,
+                                                  @RequestParam(value = "byAge", defaultValue = "false") boolean byAge,
+                                                  @RequestParam(value = "quantiles", defaultValue = "0.25,0.5,0.75,0.9,0.99") List<Double> quantiles,
+                                                  @RequestParam(value = "bins", defaultValue = "10") int bins) throws WrongAnalyticsQueryException, NoSuchRoomException, AccessDeniedException {
+        if (quantiles.stream().anyMatch(q -> q < 0 || q > 1)) {
+            throw new WrongAnalyticsQueryException("Kwantyle muszą być z przedziału [0, 1]: " + quantiles);
+        }
+        if (bins < 1 || bins > 100) {
+            throw new WrongAnalyticsQueryException("Liczba przedziałów histogramu musi być z przedziału [1, 100]: " + bins);
+        }
+        AgeGroup ageGroup = age == null ? null : AgeGroup.parse(age);
+        List<String> readable = roomService.roomIdsReadableBy(cookie, roomIds);
+        return scoreAnalyticsService.distributions(readable, task, ageGroup, byAge, quantiles, bins);
+    }
+
+    @GetMapping("/archive")
+    @ResponseBody
+    List<ArchivedRoom> getArchivedRooms(HttpServletRequest request) throws AccessDeniedException {
+        checkFromServerHost(request, "Archiwum jest dostępne tylko z komputera, na którym działa serwer");
+        return roomArchiveService.list();
+    }
+
+    @PostMapping("/archive/{room_id}/restore")
+    String restoreRoom(@PathVariable(value = "room_id") final String roomId, @CookieValue("JSESSIONID") String cookie, HttpServletRequest request) throws NoSuchRoomException, RoomAlreadyExistsException, AccessDeniedException {
+        checkFromServerHost(request, "Pokój można przywrócić tylko z komputera, na którym działa serwer");
+        roomService.restoreRoom(roomId, cookie);
+        return "redirect:/manage/" + roomId;
     }
 
     @RequestMapping("/last/results")
     @ResponseBody
     LastResultResponse getLastResults(@CookieValue("COOKIE") String cookie) {
+        resultIngestService.awaitApplied(cookie);
         return roomService.getLastResults(cookie);
     }
 
@@ -205,12 +384,13 @@ public class InfunController {
     String getQrCode(Model model) {
         model.addAttribute("ssid", "robolab");
         model.addAttribute("password", "RobolabPanda2012");
-        try {
-            String ip = InetAddress.getLocalHost().getHostAddress();
-            model.addAttribute("address", "https://" + ip + ":8443/room/join");
-        } catch (UnknownHostException e) {
-            e.printStackTrace();
-        }
+        model.addAttribute("address", routingService.externalUrl("/room/join"));
         return "qrcode";
     }
-}
\ No newline at end of file
+
+    private static void checkFromServerHost(HttpServletRequest request, String message) throws AccessDeniedException {
+        if (!isFromServerHost(request.getRemoteAddr(), request.getLocalAddr())) {
+            throw new AccessDeniedException(message);
+        }
+    }
+}
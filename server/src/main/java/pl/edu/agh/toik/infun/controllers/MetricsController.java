@@ -0,0 +1,66 @@
+package pl.edu.agh.toik.infun.controllers;
+
+import com.codahale.metrics.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scrape endpoint for the metric registry, the same values are published over JMX.
+ * Rates are per second, durations in milliseconds.
+ */
+@Controller
+public class MetricsController {
+    private static final double DURATION_FACTOR = 1.0 / TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Autowired
+    MetricRegistry metricRegistry;
+
+    @GetMapping(value = "/metrics")
+    @ResponseBody
+    Map<String, Object> metrics() {
+        Map<String, Object> gauges = new LinkedHashMap<>();
+        metricRegistry.getGauges().forEach((name, gauge) -> gauges.put(name, gauge.getValue()));
+        Map<String, Object> counters = new LinkedHashMap<>();
+        metricRegistry.getCounters().forEach((name, counter) -> counters.put(name, counter.getCount()));
+        Map<String, Object> meters = new LinkedHashMap<>();
+        metricRegistry.getMeters().forEach((name, meter) -> meters.put(name, rates(meter)));
+        Map<String, Object> timers = new LinkedHashMap<>();
+        metricRegistry.getTimers().forEach((name, timer) -> timers.put(name, durations(timer)));
+
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("gauges", gauges);
+        metrics.put("counters", counters);
+        metrics.put("meters", meters);
+        metrics.put("timers", timers);
+        return metrics;
+    }
+
+    private static Map<String, Object> rates(Metered metered) {
+        Map<String, Object> rates = new LinkedHashMap<>();
+        rates.put("count", metered.getCount());
+        rates.put("mean_rate", metered.getMeanRate());
+        rates.put("m1_rate", metered.getOneMinuteRate());
+        rates.put("m5_rate", metered.getFiveMinuteRate());
+        rates.put("m15_rate", metered.getFifteenMinuteRate());
+        return rates;
+    }
+
+    private static Map<String, Object> durations(Timer timer) {
+        Map<String, Object> durations = rates(timer);
+        Snapshot snapshot = timer.getSnapshot();
+        durations.put("min", snapshot.getMin() * DURATION_FACTOR);
+        durations.put("mean", snapshot.getMean() * DURATION_FACTOR);
+        durations.put("p50", snapshot.getMedian() * DURATION_FACTOR);
+        durations.put("p75", snapshot.get75thPercentile() * DURATION_FACTOR);
+        durations.put("p95", snapshot.get95thPercentile() * DURATION_FACTOR);
+        durations.put("p99", snapshot.get99thPercentile() * DURATION_FACTOR);
+        durations.put("max", snapshot.getMax() * DURATION_FACTOR);
+        return durations;
+    }
+}
@@ -1,12 +1,16 @@
 package pl.edu.agh.toik.infun.exceptions;
 
+/**
+ * Expected domain outcomes (no such room, no more tasks, ...) end up here on every request that
+ * hits them, so the stack trace is only filled in when there is a cause worth tracing.
+ */
 public class InFunException extends Exception {
     public InFunException() {
-        super();
+        super(null, null, true, false);
     }
 
     public InFunException(String message) {
-        super(message);
+        super(message, null, true, false);
     }
 
     public InFunException(String message, Throwable cause) {
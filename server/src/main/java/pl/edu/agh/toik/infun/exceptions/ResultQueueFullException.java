@@ -0,0 +1,19 @@
+package pl.edu.agh.toik.infun.exceptions;
+
+public class ResultQueueFullException extends InFunException {
+    public ResultQueueFullException() {
+        super();
+    }
+
+    public ResultQueueFullException(String message) {
+        super(message);
+    }
+
+    public ResultQueueFullException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public ResultQueueFullException(Throwable cause) {
+        super(cause);
+    }
+}
@@ -0,0 +1,19 @@
+package pl.edu.agh.toik.infun.exceptions;
+
+public class WrongAnalyticsQueryException extends InFunException {
+    public WrongAnalyticsQueryException() {
+        super();
+    }
+
+    public WrongAnalyticsQueryException(String message) {
+        super(message);
+    }
+
+    public WrongAnalyticsQueryException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public WrongAnalyticsQueryException(Throwable cause) {
+        super(cause);
+    }
+}
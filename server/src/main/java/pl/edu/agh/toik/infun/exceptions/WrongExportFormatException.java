@@ -0,0 +1,19 @@
+package pl.edu.agh.toik.infun.exceptions;
+
+public class WrongExportFormatException extends InFunException {
+    public WrongExportFormatException() {
+        super();
+    }
+
+    public WrongExportFormatException(String message) {
+        super(message);
+    }
+
+    public WrongExportFormatException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public WrongExportFormatException(Throwable cause) {
+        super(cause);
+    }
+}
@@ -7,6 +7,7 @@ import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
 import pl.edu.agh.toik.infun.exceptions.InFunException;
+import pl.edu.agh.toik.infun.logging.Events;
 
 @ControllerAdvice
 @Controller
@@ -14,14 +15,14 @@ public class ExceptionInfunHandler extends ResponseEntityExceptionHandler {
 
     @ExceptionHandler(InFunException.class)
     public final String handleInFunException(InFunException ex, Model model) {
-        ex.printStackTrace();
+        Events.info("request.rejected", "reason", ex.getClass().getSimpleName(), "message", ex.getMessage());
         model.addAttribute("error", ex.getMessage());
         return "error_view";
     }
 
     @ExceptionHandler(Exception.class)
     public final String handleException(Exception ex, Model model) {
-        ex.printStackTrace();
+        Events.error("request.failed", ex, "reason", ex.getClass().getSimpleName());
         model.addAttribute("error", "Błąd ogólny");
         return "error_view";
     }
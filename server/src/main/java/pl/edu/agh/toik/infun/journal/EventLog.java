@@ -0,0 +1,156 @@
+package pl.edu.agh.toik.infun.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log split into fixed-size memory-mapped segments. A record is its length, a CRC32 of
+ * the payload and the payload; a zero length or a bad checksum marks the end of a segment, so a torn
+ * write at crash time only loses the records that were not forced yet.
+ * A position is the segment index in the high 32 bits and the offset in the low 32 bits.
+ * Not thread safe, meant to be used by a single writer.
+ */
+public class EventLog implements Closeable {
+    private static final String SUFFIX = ".log";
+    private static final int HEADER = 8;
+
+    private final Path directory;
+    private final int segmentSize;
+    private int segment;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+
+    public interface RecordConsumer {
+        void accept(long position, byte[] record) throws IOException;
+    }
+
+    public EventLog(Path directory, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        List<Integer> segments = segments();
+        // never append to a segment that may end with a torn record
+        openSegment(segments.isEmpty() ? 0 : segments.get(segments.size() - 1) + 1);
+    }
+
+    public static long position(int segment, int offset) {
+        return ((long) segment << 32) | offset;
+    }
+
+    public static int segmentOf(long position) {
+        return (int) (position >>> 32);
+    }
+
+    public long append(byte[] record) throws IOException {
+        if (record.length + HEADER > segmentSize - HEADER) {
+            throw new IOException("Record of " + record.length + " bytes does not fit in a segment");
+        }
+        if (buffer.remaining() < record.length + HEADER * 2) {
+            roll();
+        }
+        final long position = position();
+        final CRC32 crc = new CRC32();
+        crc.update(record);
+        buffer.putInt(record.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(record);
+        return position;
+    }
+
+    public long position() {
+        return position(segment, buffer.position());
+    }
+
+    public int segment() {
+        return segment;
+    }
+
+    public void force() {
+        buffer.force();
+    }
+
+    public void roll() throws IOException {
+        force();
+        channel.close();
+        openSegment(segment + 1);
+    }
+
+    /**
+     * Reads every record of segments starting at the given one, in order.
+     */
+    public void read(int fromSegment, RecordConsumer consumer) throws IOException {
+        for (int index : segments()) {
+            if (index < fromSegment || index >= segment) {
+                continue;
+            }
+            try (FileChannel in = FileChannel.open(segmentPath(index), StandardOpenOption.READ)) {
+                MappedByteBuffer data = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+                while (data.remaining() >= HEADER) {
+                    final int offset = data.position();
+                    final int length = data.getInt();
+                    final int checksum = data.getInt();
+                    if (length <= 0 || length > data.remaining()) {
+                        break;
+                    }
+                    final byte[] record = new byte[length];
+                    data.get(record);
+                    final CRC32 crc = new CRC32();
+                    crc.update(record);
+                    if ((int) crc.getValue() != checksum) {
+                        break;
+                    }
+                    consumer.accept(position(index, offset), record);
+                }
+            }
+        }
+    }
+
+    public void deleteBefore(int fromSegment) throws IOException {
+        for (int index : segments()) {
+            if (index < fromSegment) {
+                Files.deleteIfExists(segmentPath(index));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private void openSegment(int index) throws IOException {
+        segment = index;
+        channel = FileChannel.open(segmentPath(index), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    }
+
+    private List<Integer> segments() throws IOException {
+        List<Integer> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    segments.add(Integer.valueOf(name.substring(0, name.length() - SUFFIX.length())));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private Path segmentPath(int index) {
+        return directory.resolve(String.format("%010d%s", index, SUFFIX));
+    }
+}
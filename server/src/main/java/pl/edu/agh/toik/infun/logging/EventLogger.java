@@ -0,0 +1,214 @@
+package pl.edu.agh.toik.infun.logging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Structured events ({@code type key=value ...}) written to the {@code infun.events} logger by a
+ * background thread. Request threads only check the per-type budget and put the event into a
+ * {@link RingBuffer}; formatting and console I/O happen on the writer. Events over the budget of
+ * their type and events that don't fit into a full buffer are counted and reported once a second.
+ */
+public class EventLogger {
+    private static final Logger LOG = LoggerFactory.getLogger("infun.events");
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    public enum Level {
+        INFO, WARN, ERROR
+    }
+
+    private static class Event {
+        private final Level level;
+        private final String type;
+        private final Object[] fields;
+        private final Throwable cause;
+
+        private Event(Level level, String type, Object[] fields, Throwable cause) {
+            this.level = level;
+            this.type = type;
+            this.fields = fields;
+            this.cause = cause;
+        }
+    }
+
+    // events of one type allowed in the current second
+    private static class Budget {
+        private final AtomicLong second = new AtomicLong();
+        private final AtomicInteger used = new AtomicInteger();
+        private final AtomicLong suppressed = new AtomicLong();
+
+        private boolean tryAcquire(long now, int limit) {
+            final long current = second.get();
+            if (current != now && second.compareAndSet(current, now)) {
+                used.set(0);
+            }
+            if (used.incrementAndGet() <= limit) {
+                return true;
+            }
+            suppressed.incrementAndGet();
+            return false;
+        }
+    }
+
+    private final RingBuffer<Event> buffer;
+    private final int ratePerSecond;
+    private final Map<String, Budget> budgets = new ConcurrentHashMap<>();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong droppedTotal = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    public EventLogger(int capacity, int ratePerSecond) {
+        this.buffer = new RingBuffer<>(capacity);
+        this.ratePerSecond = ratePerSecond;
+        this.writer = new Thread(this::run, "event-logger");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * @param fields alternating keys and values
+     */
+    public void log(Level level, String type, Throwable cause, Object... fields) {
+        final Budget budget = budgets.computeIfAbsent(type, key -> new Budget());
+        if (!budget.tryAcquire(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime()), ratePerSecond)) {
+            return;
+        }
+        if (!buffer.offer(new Event(level, type, fields, cause))) {
+            dropped.incrementAndGet();
+            droppedTotal.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return events lost to a full buffer since the start
+     */
+    public long getDropped() {
+        return droppedTotal.get();
+    }
+
+    /**
+     * Writes what is still buffered and stops the writer.
+     */
+    public void stop() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        long lastReport = System.nanoTime();
+        while (true) {
+            final Event event = buffer.poll();
+            if (event != null) {
+                write(event);
+                continue;
+            }
+            if (System.nanoTime() - lastReport >= TimeUnit.SECONDS.toNanos(1)) {
+                reportLosses();
+                lastReport = System.nanoTime();
+            }
+            if (!running) {
+                reportLosses();
+                return;
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    private void reportLosses() {
+        budgets.forEach((type, budget) -> {
+            final long suppressed = budget.suppressed.getAndSet(0);
+            if (suppressed > 0) {
+                LOG.warn(format("log.suppressed", new Object[]{"event", type, "count", suppressed, "limit", ratePerSecond}));
+            }
+        });
+        final long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            LOG.warn(format("log.dropped", new Object[]{"count", lost}));
+        }
+    }
+
+    private static void write(Event event) {
+        final String line = format(event.type, event.fields);
+        switch (event.level) {
+            case ERROR:
+                LOG.error(line, event.cause);
+                break;
+            case WARN:
+                LOG.warn(line, event.cause);
+                break;
+            default:
+                LOG.info(line, event.cause);
+        }
+    }
+
+    private static String format(String type, Object[] fields) {
+        final StringBuilder line = new StringBuilder(type);
+        for (int i = 0; i + 1 < fields.length; i += 2) {
+            line.append(' ').append(fields[i]).append('=');
+            appendValue(line, String.valueOf(fields[i + 1]));
+        }
+        return line.toString();
+    }
+
+    // values come from players too (nicks), so control characters are escaped and can't start a line of their own
+    private static void appendValue(StringBuilder line, String value) {
+        if (!needsQuotes(value)) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    line.append("\\\"");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                default:
+                    if (Character.isISOControl(c)) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+            }
+        }
+        line.append('"');
+    }
+
+    private static boolean needsQuotes(String value) {
+        if (value.isEmpty()) {
+            return true;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == ' ' || c == '"' || c == '=' || Character.isISOControl(c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,34 @@
+package pl.edu.agh.toik.infun.logging;
+
+/**
+ * Entry point for structured events, usable from code that is not a Spring bean (e.g. the model).
+ * Starts with a default {@link EventLogger}, replaced by {@code LoggingConfig} with the configured one.
+ */
+public final class Events {
+    private static volatile EventLogger logger = new EventLogger(8192, 50);
+
+    private Events() {
+    }
+
+    public static void use(EventLogger eventLogger) {
+        EventLogger previous = logger;
+        logger = eventLogger;
+        previous.stop();
+    }
+
+    public static EventLogger logger() {
+        return logger;
+    }
+
+    public static void info(String type, Object... fields) {
+        logger.log(EventLogger.Level.INFO, type, null, fields);
+    }
+
+    public static void warn(String type, Object... fields) {
+        logger.log(EventLogger.Level.WARN, type, null, fields);
+    }
+
+    public static void error(String type, Throwable cause, Object... fields) {
+        logger.log(EventLogger.Level.ERROR, type, cause, fields);
+    }
+}
@@ -0,0 +1,69 @@
+package pl.edu.agh.toik.infun.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free queue for many producers and a single consumer. Every slot carries a sequence
+ * number telling whether it is free for the producer at that position or filled for the consumer,
+ * so producers only compete on a CAS of the tail and a full buffer rejects instead of blocking.
+ */
+class RingBuffer<T> {
+    private final Object[] items;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    // read by the consumer thread only
+    private long head;
+
+    RingBuffer(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Pojemność bufora musi być potęgą dwójki, podano " + capacity);
+        }
+        items = new Object[capacity];
+        sequences = new AtomicLongArray(capacity);
+        mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * @return false when the buffer is full
+     */
+    boolean offer(T item) {
+        long position = tail.get();
+        while (true) {
+            final int index = (int) position & mask;
+            final long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    items[index] = item;
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * @return the oldest item or null when there is none, consumer thread only
+     */
+    @SuppressWarnings("unchecked")
+    T poll() {
+        final int index = (int) head & mask;
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        final T item = (T) items[index];
+        items[index] = null;
+        sequences.set(index, head + items.length);
+        head++;
+        return item;
+    }
+}
@@ -0,0 +1,185 @@
+package pl.edu.agh.toik.infun.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntFunction;
+
+/**
+ * Users of a room ordered by score (highest first), kept as a size-augmented treap
+ * so rank, top-K and page queries don't need to sort the whole room.
+ * The nodes are the players' slots, with links, sizes and keys in arrays indexed by slot.
+ */
+public class Leaderboard {
+    private static final int NIL = -1;
+
+    private final Random random = new Random();
+    private final IntFunction<User> views;
+    // score of the slot when it was inserted, ties are ordered by slot
+    private double[] scores = new double[8];
+    private int[] priorities = new int[8];
+    private int[] lefts = new int[8];
+    private int[] rights = new int[8];
+    private int[] sizes = new int[8];
+    private int root = NIL;
+
+    /**
+     * @param views creates the user view of a slot
+     */
+    public Leaderboard(IntFunction<User> views) {
+        this.views = views;
+    }
+
+    public synchronized void add(User user) {
+        final int slot = user.slot();
+        ensureCapacity(slot);
+        scores[slot] = user.getScore();
+        priorities[slot] = random.nextInt();
+        lefts[slot] = NIL;
+        rights[slot] = NIL;
+        sizes[slot] = 1;
+        root = insert(root, slot);
+    }
+
+    public synchronized void remove(User user) {
+        if (user.slot() < sizes.length) {
+            root = delete(root, scores[user.slot()], user.slot());
+        }
+    }
+
+    public synchronized void update(User user) {
+        remove(user);
+        add(user);
+    }
+
+    /**
+     * @return 1 + number of users with strictly higher score
+     */
+    public synchronized int rank(double score) {
+        int greater = 0;
+        int node = root;
+        while (node != NIL) {
+            if (scores[node] > score) {
+                greater += size(lefts[node]) + 1;
+                node = rights[node];
+            } else {
+                node = lefts[node];
+            }
+        }
+        return greater + 1;
+    }
+
+    public int rankOf(User user) {
+        return rank(user.getScore());
+    }
+
+    public List<User> top(int limit) {
+        return page(0, limit);
+    }
+
+    public synchronized List<User> page(int offset, int limit) {
+        final int from = Math.max(offset, 0);
+        final int to = (int) Math.min((long) from + Math.max(limit, 0), size(root));
+        final List<User> result = new ArrayList<>(Math.max(to - from, 0));
+        collect(root, from, to, 0, result);
+        return result;
+    }
+
+    public synchronized int size() {
+        return size(root);
+    }
+
+    private void collect(int node, int from, int to, int base, List<User> result) {
+        if (node == NIL || base >= to || base + sizes[node] <= from) {
+            return;
+        }
+        collect(lefts[node], from, to, base, result);
+        final int index = base + size(lefts[node]);
+        if (index >= from && index < to) {
+            result.add(views.apply(node));
+        }
+        collect(rights[node], from, to, index + 1, result);
+    }
+
+    private int insert(int tree, int node) {
+        final int[] parts = split(tree, scores[node], node);
+        return merge(merge(parts[0], node), parts[1]);
+    }
+
+    private int delete(int node, double score, int slot) {
+        if (node == NIL) {
+            return NIL;
+        }
+        final int cmp = compare(node, score, slot);
+        if (cmp == 0) {
+            return merge(lefts[node], rights[node]);
+        }
+        if (cmp < 0) {
+            rights[node] = delete(rights[node], score, slot);
+        } else {
+            lefts[node] = delete(lefts[node], score, slot);
+        }
+        updateSize(node);
+        return node;
+    }
+
+    // splits into nodes ordered before the given key and the rest
+    private int[] split(int node, double score, int slot) {
+        if (node == NIL) {
+            return new int[]{NIL, NIL};
+        }
+        if (compare(node, score, slot) < 0) {
+            final int[] parts = split(rights[node], score, slot);
+            rights[node] = parts[0];
+            updateSize(node);
+            return new int[]{node, parts[1]};
+        }
+        final int[] parts = split(lefts[node], score, slot);
+        lefts[node] = parts[1];
+        updateSize(node);
+        return new int[]{parts[0], node};
+    }
+
+    private int merge(int left, int right) {
+        if (left == NIL) {
+            return right;
+        }
+        if (right == NIL) {
+            return left;
+        }
+        if (priorities[left] > priorities[right]) {
+            rights[left] = merge(rights[left], right);
+            updateSize(left);
+            return left;
+        }
+        lefts[right] = merge(left, lefts[right]);
+        updateSize(right);
+        return right;
+    }
+
+    // negative when node goes before the key: higher scores first, ties ordered by slot
+    private int compare(int node, double score, int slot) {
+        final int byScore = Double.compare(score, scores[node]);
+        return byScore != 0 ? byScore : Integer.compare(node, slot);
+    }
+
+    private int size(int node) {
+        return node == NIL ? 0 : sizes[node];
+    }
+
+    private void updateSize(int node) {
+        sizes[node] = 1 + size(lefts[node]) + size(rights[node]);
+    }
+
+    private void ensureCapacity(int slot) {
+        if (slot >= sizes.length) {
+            final int capacity = Math.max(sizes.length * 2, slot + 1);
+            scores = Arrays.copyOf(scores, capacity);
+            priorities = Arrays.copyOf(priorities, capacity);
+            lefts = Arrays.copyOf(lefts, capacity);
+            rights = Arrays.copyOf(rights, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+        }
+    }
+}
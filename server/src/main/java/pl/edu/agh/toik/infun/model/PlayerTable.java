@@ -0,0 +1,244 @@
+package pl.edu.agh.toik.infun.model;
+
+import java.util.Arrays;
+
+/**
+ * Players of one room stored column-wise, a player is a slot index into parallel arrays and
+ * {@link User} is only a view of a slot. Slots are only appended, a player who leaves keeps the
+ * slot with their last values, so a view never starts reading somebody else's row.
+ * Players are found by cookie through an open-addressing index of slots. The results of a player's
+ * tasks are kept in a row of their own, indexed by sequence position and grown as tasks are completed,
+ * so a room takes memory for the results it has rather than for the length of its sequence.
+ *
+ * Written only under the room lock. Every mutation ends by writing the volatile {@link #columns}
+ * reference and readers start by reading it, which makes the lock-free reads see complete writes.
+ */
+final class PlayerTable {
+    private static final int INITIAL_CAPACITY = 8;
+    private static final int INITIAL_TASK_RESULTS = 4;
+
+    static final int NO_TASK = -1;
+
+    private static final class Columns {
+        final String[] nicks;
+        final String[] cookies;
+        final String[] colors;
+        final int[] ages;
+        final double[] scores;
+        final double[] lastResults;
+        final int[] completed;
+        final int[] currentTasks;
+        final boolean[] live;
+        // rows are replaced, never written past their length, so a reader holding an old row is fine
+        final double[][] taskResults;
+        // slot + 1 by cookie hash, twice the capacity so probes stay short
+        final int[] index;
+        int size;
+        int liveCount;
+
+        Columns(int capacity) {
+            nicks = new String[capacity];
+            cookies = new String[capacity];
+            colors = new String[capacity];
+            ages = new int[capacity];
+            scores = new double[capacity];
+            lastResults = new double[capacity];
+            completed = new int[capacity];
+            currentTasks = new int[capacity];
+            live = new boolean[capacity];
+            taskResults = new double[capacity][];
+            index = new int[capacity * 2];
+        }
+
+        Columns grow() {
+            final Columns grown = new Columns(nicks.length * 2);
+            System.arraycopy(nicks, 0, grown.nicks, 0, size);
+            System.arraycopy(cookies, 0, grown.cookies, 0, size);
+            System.arraycopy(colors, 0, grown.colors, 0, size);
+            System.arraycopy(ages, 0, grown.ages, 0, size);
+            System.arraycopy(scores, 0, grown.scores, 0, size);
+            System.arraycopy(lastResults, 0, grown.lastResults, 0, size);
+            System.arraycopy(completed, 0, grown.completed, 0, size);
+            System.arraycopy(currentTasks, 0, grown.currentTasks, 0, size);
+            System.arraycopy(live, 0, grown.live, 0, size);
+            System.arraycopy(taskResults, 0, grown.taskResults, 0, size);
+            grown.size = size;
+            grown.liveCount = liveCount;
+            for (int slot = 0; slot < size; slot++) {
+                if (live[slot]) {
+                    grown.indexSlot(slot);
+                }
+            }
+            return grown;
+        }
+
+        void indexSlot(int slot) {
+            final int mask = index.length - 1;
+            int i = hash(cookies[slot]) & mask;
+            while (index[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            index[i] = slot + 1;
+        }
+
+        int find(String cookie) {
+            final int mask = index.length - 1;
+            for (int i = hash(cookie) & mask; index[i] != 0; i = (i + 1) & mask) {
+                final int slot = index[i] - 1;
+                if (live[slot] && cookie.equals(cookies[slot])) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        private static int hash(String cookie) {
+            final int h = cookie.hashCode();
+            return h ^ (h >>> 16);
+        }
+    }
+
+    private volatile Columns columns;
+
+    PlayerTable() {
+        columns = new Columns(INITIAL_CAPACITY);
+    }
+
+    int add(String nick, int age, String color, String cookie) {
+        Columns c = columns;
+        if (c.size == c.nicks.length) {
+            c = c.grow();
+        }
+        final int slot = c.size;
+        c.nicks[slot] = nick;
+        c.cookies[slot] = cookie;
+        c.colors[slot] = color;
+        c.ages[slot] = age;
+        c.currentTasks[slot] = NO_TASK;
+        c.live[slot] = true;
+        c.indexSlot(slot);
+        c.size++;
+        c.liveCount++;
+        columns = c;
+        return slot;
+    }
+
+    void remove(int slot) {
+        final Columns c = columns;
+        if (c.live[slot]) {
+            c.live[slot] = false;
+            c.liveCount--;
+        }
+        columns = c;
+    }
+
+    void setResult(int slot, double score, double lastResult, int completed) {
+        final Columns c = columns;
+        c.scores[slot] = score;
+        c.lastResults[slot] = lastResult;
+        c.completed[slot] = completed;
+        columns = c;
+    }
+
+    void setTaskResult(int slot, int position, double result) {
+        final Columns c = columns;
+        double[] row = c.taskResults[slot];
+        if (row == null || position >= row.length) {
+            final int length = Math.max(position + 1, row == null ? INITIAL_TASK_RESULTS : row.length * 2);
+            row = row == null ? new double[length] : Arrays.copyOf(row, length);
+        }
+        row[position] = result;
+        c.taskResults[slot] = row;
+        columns = c;
+    }
+
+    void setCurrentTask(int slot, int task) {
+        final Columns c = columns;
+        c.currentTasks[slot] = task;
+        columns = c;
+    }
+
+    /**
+     * @return slot of the player with the cookie who is still in the room, -1 if there is none
+     */
+    int find(String cookie) {
+        return columns.find(cookie);
+    }
+
+    String nick(int slot) {
+        return columns.nicks[slot];
+    }
+
+    String cookie(int slot) {
+        return columns.cookies[slot];
+    }
+
+    String color(int slot) {
+        return columns.colors[slot];
+    }
+
+    int age(int slot) {
+        return columns.ages[slot];
+    }
+
+    double score(int slot) {
+        return columns.scores[slot];
+    }
+
+    double lastResult(int slot) {
+        return columns.lastResults[slot];
+    }
+
+    int completed(int slot) {
+        return columns.completed[slot];
+    }
+
+    /**
+     * @return the result at the position, 0 for a position without one
+     */
+    double taskResult(int slot, int position) {
+        final double[] row = columns.taskResults[slot];
+        return row != null && position < row.length ? row[position] : 0;
+    }
+
+    int currentTask(int slot) {
+        return columns.currentTasks[slot];
+    }
+
+    int liveCount() {
+        return columns.liveCount;
+    }
+
+    /**
+     * @return whether a player still in the room uses the nick
+     */
+    boolean containsNick(String nick) {
+        final Columns c = columns;
+        for (int slot = 0; slot < c.size; slot++) {
+            if (c.live[slot] && c.nicks[slot].equals(nick)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return slots of players still in the room, in joining order
+     */
+    int[] liveSlots() {
+        final Columns c = columns;
+        final int[] slots = new int[c.liveCount];
+        int found = 0;
+        for (int slot = 0; slot < c.size && found < slots.length; slot++) {
+            if (c.live[slot]) {
+                slots[found++] = slot;
+            }
+        }
+        return found == slots.length ? slots : Arrays.copyOf(slots, found);
+    }
+
+    @Override
+    public String toString() {
+        return "PlayerTable(" + liveCount() + " players)";
+    }
+}
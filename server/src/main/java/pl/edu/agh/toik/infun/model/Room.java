@@ -1,76 +1,265 @@
 package pl.edu.agh.toik.infun.model;
 
 import com.google.gson.Gson;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+import pl.edu.agh.toik.infun.exceptions.NoMoreAvailableTasksException;
+import pl.edu.agh.toik.infun.exceptions.NoUserCookieFoundException;
 import pl.edu.agh.toik.infun.exceptions.UserAlreadyExistsException;
+import pl.edu.agh.toik.infun.model.domain.AgeGroup;
+import pl.edu.agh.toik.infun.model.domain.QueuedResult;
 import pl.edu.agh.toik.infun.model.requests.TaskConfig;
 import pl.edu.agh.toik.infun.services.IRandomColor;
 import pl.edu.agh.toik.infun.services.RandomColorFactory;
+import pl.edu.agh.toik.infun.utils.ScoreSketch;
 
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 
+/**
+ * All mutations of a room and of its users go through the synchronized methods below, so they are
+ * serialized per room and rooms never contend with each other. Reads go through the player table
+ * and never take the lock.
+ *
+ * Players are kept column-wise in a {@link PlayerTable} and {@link User} objects are views of it.
+ * Tasks come from a seeded {@link TaskSequence} shared by the room or varied per player, players only
+ * keep their position in it.
+ *
+ * Results are also counted into a {@link ScoreSketch} per task and age group, updated together with
+ * the players' task result column under the lock, so statistics never need a scan of the players.
+ */
 @Data
 public class Room {
+    public static final int MAX_TASK_NUMBER = 100;
+
     private String id;
     private List<TaskConfig> tasksConfig;
-    private List<String> tasks;
-    private List<User> userList;
+    private Leaderboard leaderboard;
     private String creatorCookie;
     private int taskNumber;
     private Gson gson;
-    private Random random;
     private IRandomColor randomColor;
+    // distinct task names, the sequence and the players refer to tasks by index into it
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private String[] taskNames;
+    @Setter(AccessLevel.NONE)
+    private TaskSequence taskSequence;
+    // every player gets their own variant of the sequence
+    @Setter(AccessLevel.NONE)
+    private boolean perPlayerTasks;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private PlayerTable players;
+    // by task ordinal * age groups + age group, created on the first result
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private ScoreSketch[] scoreSketches;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private TaskConfigResponses configResponses;
+    @Setter(AccessLevel.NONE)
+    private volatile long lastActivity;
 
     public Room(String id, List<TaskConfig> tasksConfig, String creatorCookie, int taskNumber) {
-        this.random = new Random();
+        this(id, tasksConfig, creatorCookie, taskNumber, ThreadLocalRandom.current().nextLong(), false);
+    }
+
+    public Room(String id, List<TaskConfig> tasksConfig, String creatorCookie, int taskNumber, long taskSeed, boolean perPlayerTasks) {
         this.gson = new Gson();
         this.id = id;
-        this.userList = Collections.synchronizedList(new ArrayList<>());
+        this.leaderboard = new Leaderboard(slot -> new User(this, slot));
         this.tasksConfig = tasksConfig;
-        this.tasks = createTasksSequence(tasksConfig.stream().map(TaskConfig::getName).collect(Collectors.toList()), taskNumber);
+        final List<String> names = tasksConfig.stream().map(TaskConfig::getName).distinct().collect(Collectors.toList());
+        this.taskSequence = TaskSequence.seeded(taskSeed, names.size(), taskNumber);
+        this.taskNames = names.toArray(new String[0]);
+        this.perPlayerTasks = perPlayerTasks;
+        this.players = new PlayerTable();
+        this.scoreSketches = new ScoreSketch[taskNames.length * AgeGroup.values().length];
+        this.configResponses = new TaskConfigResponses(id, tasksConfig);
         this.creatorCookie = creatorCookie;
         this.taskNumber = taskNumber;
         this.randomColor = RandomColorFactory.getRandomColor();
+        this.lastActivity = System.currentTimeMillis();
     }
 
-    private List<String> createTasksSequence(List<String> tasks, int taskNumber) {
-        List<String> resultList = new ArrayList<>();
-        if (tasks.size() == 1) {
-            for (int i = 0; i < taskNumber; i++) {
-                resultList.add(tasks.get(0));
-            }
-            return resultList;
-        }
-        String currentTask = tasks.remove(random.nextInt(tasks.size()));
-        resultList.add(currentTask);
-        String previousTask = currentTask;
-        for (int i = 0; i < taskNumber - 1; i++) {
-            currentTask = tasks.remove(random.nextInt(tasks.size()));
-            resultList.add(currentTask);
-            tasks.add(previousTask);
-            previousTask = currentTask;
+    public synchronized User addUser(String name, int age, String cookie) throws UserAlreadyExistsException {
+        touch();
+        if (players.find(cookie) >= 0 || players.containsNick(name)) {
+            throw new UserAlreadyExistsException("Użytkownik = " + name + " już istnieje");
         }
-        return resultList;
+        return insertUser(name, age, this.randomColor.getColor(players.liveCount()), cookie);
     }
 
-    public void addUser(String name, int age, String cookie) throws UserAlreadyExistsException {
-        if (userList.stream().anyMatch(u -> u.getNick().equals(name))) {
-            throw new UserAlreadyExistsException("Użytkownik = " + name + " już istnieje");
-        }
-        final String color = this.randomColor.getColor(this.userList.size());
-        userList.add(new User(name, age, color, cookie, new ArrayList<>(tasks)));
+    public synchronized void restoreUser(String name, int age, String color, String cookie) {
+        removeUser(cookie);
+        randomColor.takeColor(color);
+        insertUser(name, age, color, cookie);
+    }
+
+    private User insertUser(String name, int age, String color, String cookie) {
+        final User user = new User(this, players.add(name, age, color, cookie));
+        leaderboard.add(user);
+        return user;
     }
 
-    public void removeUser(final String cookie) {
+    public synchronized void removeUser(final String cookie) {
+        touch();
         getUserByCookie(cookie)
                 .ifPresent(user -> {
-                    userList.remove(user);
+                    final double[] taskResults = user.getTaskResults();
+                    for (int position = 0; position < taskResults.length; position++) {
+                        updateScore(user.slot(), position, taskResults[position], false);
+                    }
+                    players.remove(user.slot());
+                    leaderboard.remove(user);
                     randomColor.returnColor(user.getColor());
                 });
     }
 
+    /**
+     * The player is looked up under the lock, so a result never lands in the slot of a player who just left.
+     *
+     * @return the player whose score changed, empty when the result was for another task
+     */
+    public synchronized Optional<User> addResult(String cookie, String nick, double result, String task) throws NoUserCookieFoundException {
+        touch();
+        final User user = getUserByCookie(cookie)
+                .filter(u -> u.getNick().equals(nick))
+                .orElseThrow(NoUserCookieFoundException::new);
+        return user.addUserResult(result, task) ? Optional.of(user) : Optional.empty();
+    }
+
+    /**
+     * Results of players who left in the meantime are dropped.
+     * @return users whose score changed
+     */
+    public synchronized Set<User> addResults(List<QueuedResult> results) {
+        touch();
+        Set<User> updated = new HashSet<>();
+        for (QueuedResult result : results) {
+            getUserByCookie(result.getCookie())
+                    .filter(user -> user.getNick().equals(result.getNick()))
+                    .filter(user -> user.addUserResult(result.getResult(), result.getTaskName()))
+                    .ifPresent(updated::add);
+        }
+        return updated;
+    }
+
+    public synchronized void restoreResult(String cookie, double score, double lastResult, int completedNumber) {
+        getUserByCookie(cookie).ifPresent(user -> user.restoreResult(score, lastResult, completedNumber));
+    }
+
+    public synchronized void restoreTaskResults(String cookie, double[] taskResults) {
+        getUserByCookie(cookie).ifPresent(user -> user.restoreTaskResults(taskResults));
+    }
+
+    /**
+     * Counts the task results of the players again, after they were restored from the journal or an archive.
+     */
+    public synchronized void rebuildScoreSketches() {
+        Arrays.fill(scoreSketches, null);
+        for (User user : getUserList()) {
+            final double[] taskResults = user.getTaskResults();
+            for (int position = 0; position < taskResults.length; position++) {
+                updateScore(user.slot(), position, taskResults[position], true);
+            }
+        }
+    }
+
+    /**
+     * Adds the results of the task, of the players of the age group or of all players when it's null,
+     * to the given sketch.
+     */
+    public synchronized void mergeScores(String task, AgeGroup ageGroup, ScoreSketch into) {
+        final int ordinal = Arrays.asList(taskNames).indexOf(task);
+        if (ordinal < 0) {
+            return;
+        }
+        for (AgeGroup group : AgeGroup.values()) {
+            final ScoreSketch sketch = scoreSketches[ordinal * AgeGroup.values().length + group.ordinal()];
+            if (sketch != null && (ageGroup == null || ageGroup == group)) {
+                into.merge(sketch);
+            }
+        }
+    }
+
+    public synchronized String nextTask(String cookie) throws NoMoreAvailableTasksException, NoUserCookieFoundException {
+        touch();
+        return getUserByCookie(cookie).orElseThrow(NoUserCookieFoundException::new).getNextTask();
+    }
+
+    /**
+     * Marks the room as in use, idle rooms are archived and dropped from memory.
+     */
+    public void touch() {
+        lastActivity = System.currentTimeMillis();
+    }
+
     public Optional<User> getUserByCookie(String cookie) {
-        return userList.stream().filter(u -> u.getCookieValue().equals(cookie)).findFirst();
+        final int slot = players.find(cookie);
+        return slot < 0 ? Optional.empty() : Optional.of(new User(this, slot));
+    }
+
+    /**
+     * @return players in joining order
+     */
+    public List<User> getUserList() {
+        final int[] slots = players.liveSlots();
+        final List<User> users = new ArrayList<>(slots.length);
+        for (int slot : slots) {
+            users.add(new User(this, slot));
+        }
+        return users;
+    }
+
+    public TaskConfigResponse getConfigResponse(String task, User user) {
+        return configResponses.response(task, user.getNick(), user.getAge());
+    }
+
+    public int getPlayerCount() {
+        return players.liveCount();
+    }
+
+    /**
+     * @return distinct tasks of the sequence
+     */
+    public List<String> getTaskNames() {
+        return Collections.unmodifiableList(Arrays.asList(taskNames));
+    }
+
+    PlayerTable players() {
+        return players;
+    }
+
+    int sequenceLength() {
+        return taskSequence.length();
+    }
+
+    /**
+     * @return ordinal of the task the player has at the given position of the sequence
+     */
+    int taskAt(int slot, int position) {
+        return taskSequence.taskAt(perPlayerTasks ? 1L << 32 | players.cookie(slot).hashCode() & 0xFFFFFFFFL : 0, position);
+    }
+
+    String taskName(int ordinal) {
+        return ordinal == PlayerTable.NO_TASK ? null : taskNames[ordinal];
+    }
+
+    // called under the lock whenever a result enters or leaves the task result column
+    void updateScore(int slot, int position, double result, boolean add) {
+        final int i = taskAt(slot, position) * AgeGroup.values().length + AgeGroup.of(players.age(slot)).ordinal();
+        if (scoreSketches[i] == null) {
+            scoreSketches[i] = new ScoreSketch();
+        }
+        if (add) {
+            scoreSketches[i].add(result);
+        } else {
+            scoreSketches[i].remove(result);
+        }
     }
 }
@@ -0,0 +1,74 @@
+package pl.edu.agh.toik.infun.model;
+
+import com.fasterxml.jackson.core.util.BufferRecyclers;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The config response of one player, see {@link TaskConfigResponses}. The ETag comes from the hash of the
+ * room's part and of the player's fields, so a request the client already has the answer to never builds
+ * the body.
+ */
+public final class TaskConfigResponse {
+    private static final byte[] AGE = ",\"age\":".getBytes(StandardCharsets.UTF_8);
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Prefix prefix;
+    private final String nick;
+    private final int age;
+
+    static final class Prefix {
+        private final byte[] bytes;
+        private final long hash;
+
+        Prefix(byte[] bytes) {
+            this.bytes = bytes;
+            long hash = FNV_OFFSET;
+            for (byte b : bytes) {
+                hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+            }
+            this.hash = hash;
+        }
+    }
+
+    TaskConfigResponse(Prefix prefix, String nick, int age) {
+        this.prefix = prefix;
+        this.nick = nick;
+        this.age = age;
+    }
+
+    /**
+     * @return a strong ETag, quoted
+     */
+    public String getETag() {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < nick.length(); i++) {
+            hash = (hash ^ nick.charAt(i)) * FNV_PRIME;
+        }
+        hash = (hash ^ age) * FNV_PRIME;
+        return "\"" + Long.toHexString(prefix.hash) + "-" + Long.toHexString(hash) + "\"";
+    }
+
+    /**
+     * @return the JSON response, built on every call
+     */
+    public byte[] body() {
+        final byte[] quotedNick = BufferRecyclers.getJsonStringEncoder().quoteAsUTF8(nick);
+        final byte[] ageBytes = Integer.toString(age).getBytes(StandardCharsets.US_ASCII);
+        final byte[] body = new byte[prefix.bytes.length + quotedNick.length + AGE.length + ageBytes.length + 3];
+        int at = 0;
+        System.arraycopy(prefix.bytes, 0, body, at, prefix.bytes.length);
+        at += prefix.bytes.length;
+        body[at++] = '"';
+        System.arraycopy(quotedNick, 0, body, at, quotedNick.length);
+        at += quotedNick.length;
+        body[at++] = '"';
+        System.arraycopy(AGE, 0, body, at, AGE.length);
+        at += AGE.length;
+        System.arraycopy(ageBytes, 0, body, at, ageBytes.length);
+        at += ageBytes.length;
+        body[at] = '}';
+        return body;
+    }
+}
@@ -0,0 +1,46 @@
+package pl.edu.agh.toik.infun.model;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import pl.edu.agh.toik.infun.model.requests.TaskConfig;
+
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Responses to {@code /{task}/config} of one room, {@code {"config":[...],"group":"ROOM","nick":"...","age":10}}.
+ * Everything up to the nick is the same for all players of the room, so it's serialized once per task when
+ * the room is created and a request only looks it up and appends the player's nick and age.
+ * Tasks without a config in the room get an empty one.
+ */
+public final class TaskConfigResponses {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Map<String, TaskConfigResponse.Prefix> prefixes = new HashMap<>();
+    private final TaskConfigResponse.Prefix noConfig;
+
+    public TaskConfigResponses(String roomId, List<TaskConfig> tasksConfig) {
+        for (TaskConfig taskConfig : tasksConfig) {
+            // the first config of a task wins, as when it was looked up on every request
+            prefixes.computeIfAbsent(taskConfig.getName(), task -> prefix(roomId, taskConfig));
+        }
+        noConfig = prefix(roomId, new TaskConfig(null, Collections.emptyList()));
+    }
+
+    public TaskConfigResponse response(String task, String nick, int age) {
+        return new TaskConfigResponse(prefixes.getOrDefault(task, noConfig), nick, age);
+    }
+
+    private static TaskConfigResponse.Prefix prefix(String roomId, TaskConfig taskConfig) {
+        try {
+            return new TaskConfigResponse.Prefix(("{\"config\":" + MAPPER.writeValueAsString(taskConfig.getConfig())
+                    + ",\"group\":" + MAPPER.writeValueAsString(roomId) + ",\"nick\":").getBytes(StandardCharsets.UTF_8));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
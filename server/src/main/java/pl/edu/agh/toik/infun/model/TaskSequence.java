@@ -0,0 +1,88 @@
+package pl.edu.agh.toik.infun.model;
+
+/**
+ * The task sequence of a room, computed position by position from a seed instead of being drawn up front,
+ * so the sequence itself takes constant memory whatever its length and any position can be looked up in
+ * constant time. Players' results are stored separately, see {@link PlayerTable}.
+ * A variant mixed into the seed gives every player a sequence of their own at no cost, and the same seed
+ * always gives the same sequences.
+ *
+ * Tasks at even positions are drawn uniformly, a task at an odd position is drawn from the tasks other than
+ * its two neighbours, so a task never comes twice in a row. With two tasks they simply alternate.
+ * Tasks are ordinals into the room's distinct task names.
+ */
+public final class TaskSequence {
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final long seed;
+    private final int taskCount;
+    private final int length;
+
+    private TaskSequence(long seed, int taskCount, int length) {
+        this.seed = seed;
+        this.taskCount = taskCount;
+        this.length = length;
+    }
+
+    public static TaskSequence seeded(long seed, int taskCount, int length) {
+        if (taskCount < 1 || length < 0) {
+            throw new IllegalArgumentException("Niepoprawna sekwencja " + length + " zadań z " + taskCount);
+        }
+        return new TaskSequence(seed, taskCount, length);
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public int taskAt(int position) {
+        return taskAt(0, position);
+    }
+
+    /**
+     * @param variant 0 for the room's own sequence, any other value for a sequence derived from it
+     */
+    public int taskAt(long variant, int position) {
+        if (position < 0 || position >= length) {
+            throw new IndexOutOfBoundsException("Pozycja " + position + " poza sekwencją " + length + " zadań");
+        }
+        final long variantSeed = variant == 0 ? seed : mix(seed ^ mix(variant));
+        if (taskCount == 1) {
+            return 0;
+        }
+        if (taskCount == 2) {
+            return (int) ((mix(variantSeed) + position) & 1);
+        }
+        if ((position & 1) == 0) {
+            return draw(variantSeed, position, taskCount);
+        }
+        // skip the neighbours, counting up from the smaller one
+        final int previous = draw(variantSeed, position - 1, taskCount);
+        final int next = draw(variantSeed, position + 1, taskCount);
+        final int low = Math.min(previous, next);
+        final int high = Math.max(previous, next);
+        int task = draw(variantSeed, position, taskCount - (low == high ? 1 : 2));
+        if (task >= low) {
+            task++;
+        }
+        if (low != high && task >= high) {
+            task++;
+        }
+        return task;
+    }
+
+    private static int draw(long seed, int position, int bound) {
+        return (int) ((mix(seed + (position + 1L) * GOLDEN_GAMMA) >>> 1) % bound);
+    }
+
+    // the SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -1,54 +1,138 @@
 package pl.edu.agh.toik.infun.model;
 
 
-import lombok.Data;
 import pl.edu.agh.toik.infun.exceptions.NoMoreAvailableTasksException;
+import pl.edu.agh.toik.infun.logging.Events;
 
-import java.util.List;
+/**
+ * A view of one player's slot in the {@link PlayerTable} of a room, created on every lookup.
+ * Views of the same slot are equal. Tasks are ordinals into the room's shared task sequence.
+ */
+public class User {
+    private final Room room;
+    private final int slot;
 
-import static pl.edu.agh.toik.infun.utils.InFunUtils.RED;
-import static pl.edu.agh.toik.infun.utils.InFunUtils.RESET;
+    User(Room room, int slot) {
+        this.room = room;
+        this.slot = slot;
+    }
 
-@Data
-public class User {
-    private String nick;
-    private int age;
-    private String color;
-    private String cookieValue;
-    private double score;
-    private double lastResult;
-    private List<String> availableTasks;
-    private int completedNumber;
-    private String currentTask;
-
-
-    public User(String nick, int age, String color, String cookieValue, List<String> taskList) {
-        this.nick = nick;
-        this.age = age;
-        this.color = color;
-        this.cookieValue = cookieValue;
-        this.availableTasks = taskList;
-        this.lastResult = 0;
-        this.completedNumber = 0;
-    }
-
-    public void addUserResult(double result, String task) {
-        if (!currentTask.equals(task)){ //todo ???
-            System.out.println(RED + "Given result = " + result + " it's from wrong task = " + task + " but current task is = " + currentTask + RESET);
+    int slot() {
+        return slot;
+    }
+
+    public String getNick() {
+        return room.players().nick(slot);
+    }
+
+    public int getAge() {
+        return room.players().age(slot);
+    }
+
+    public String getColor() {
+        return room.players().color(slot);
+    }
+
+    public String getCookieValue() {
+        return room.players().cookie(slot);
+    }
+
+    public double getScore() {
+        return room.players().score(slot);
+    }
+
+    public double getLastResult() {
+        return room.players().lastResult(slot);
+    }
+
+    public int getCompletedNumber() {
+        return room.players().completed(slot);
+    }
+
+    public String getCurrentTask() {
+        return room.taskName(room.players().currentTask(slot));
+    }
+
+    // called under the room lock, see Room#addResult
+    public boolean addUserResult(double result, String task) {
+        final PlayerTable players = room.players();
+        if (!task.equals(getCurrentTask())) { //todo ???
+            Events.warn("result.wrong-task", "room", room.getId(), "nick", getNick(), "task", task, "current", getCurrentTask(), "result", result);
+            return false;
         } else {
-            score += result;
-            lastResult = result;
-            completedNumber++;
+            if (players.completed(slot) < room.sequenceLength()) {
+                players.setTaskResult(slot, players.completed(slot), result);
+                room.updateScore(slot, players.completed(slot), result, true);
+            }
+            players.setResult(slot, players.score(slot) + result, result, players.completed(slot) + 1);
+            room.getLeaderboard().update(this);
+            return true;
+        }
+
+    }
+
+    // called while replaying the journal, see Room#restoreResult
+    public void restoreResult(double score, double lastResult, int completedNumber) {
+        final PlayerTable players = room.players();
+        players.setResult(slot, score, lastResult, completedNumber);
+        if (completedNumber > 0 && completedNumber <= room.sequenceLength()) {
+            players.setTaskResult(slot, completedNumber - 1, lastResult);
         }
+        players.setCurrentTask(slot, completedNumber < room.sequenceLength() ? room.taskAt(slot, completedNumber) : PlayerTable.NO_TASK);
+        room.getLeaderboard().update(this);
+    }
+
+    // called while replaying a snapshot or restoring an archive, see Room#restoreTaskResults
+    public void restoreTaskResults(double[] taskResults) {
+        final PlayerTable players = room.players();
+        for (int position = 0; position < Math.min(taskResults.length, room.sequenceLength()); position++) {
+            players.setTaskResult(slot, position, taskResults[position]);
+        }
+    }
 
+    /**
+     * @return the task at the given position of the player's sequence
+     */
+    public String getTask(int position) {
+        return room.taskName(room.taskAt(slot, position));
+    }
+
+    /**
+     * @return results of the tasks completed so far, in the order they were played
+     */
+    public double[] getTaskResults() {
+        final PlayerTable players = room.players();
+        final double[] results = new double[Math.min(players.completed(slot), room.sequenceLength())];
+        for (int position = 0; position < results.length; position++) {
+            results[position] = players.taskResult(slot, position);
+        }
+        return results;
     }
 
     public String getNextTask() throws NoMoreAvailableTasksException {
-        if (completedNumber < availableTasks.size()) {
-            currentTask = availableTasks.get(completedNumber);
-            return currentTask;
+        final PlayerTable players = room.players();
+        final int completedNumber = players.completed(slot);
+        if (completedNumber < room.sequenceLength()) {
+            final int task = room.taskAt(slot, completedNumber);
+            players.setCurrentTask(slot, task);
+            return room.taskName(task);
         } else {
             throw new NoMoreAvailableTasksException("Nie ma już więcej dostępnych zadań");
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof User && ((User) o).room == room && ((User) o).slot == slot;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(room) * 31 + slot;
+    }
+
+    @Override
+    public String toString() {
+        return "User(nick=" + getNick() + ", score=" + getScore() + ", completedNumber=" + getCompletedNumber() + ")";
+    }
+}
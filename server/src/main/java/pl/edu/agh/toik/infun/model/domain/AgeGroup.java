@@ -0,0 +1,43 @@
+package pl.edu.agh.toik.infun.model.domain;
+
+import pl.edu.agh.toik.infun.exceptions.WrongAnalyticsQueryException;
+
+/**
+ * Age ranges the score statistics are kept for, by the age players give when joining.
+ */
+public enum AgeGroup {
+    UNDER_7(0, 6), FROM_7(7, 9), FROM_10(10, 12), FROM_13(13, 15), FROM_16(16, 18), ADULT(19, Integer.MAX_VALUE);
+
+    private final int from;
+    private final int to;
+
+    AgeGroup(int from, int to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    public String getLabel() {
+        return to == Integer.MAX_VALUE ? from + "+" : from + "-" + to;
+    }
+
+    public static AgeGroup of(int age) {
+        for (AgeGroup group : values()) {
+            if (age <= group.to) {
+                return group;
+            }
+        }
+        return ADULT;
+    }
+
+    /**
+     * @param label a label like "10-12" or "19+"
+     */
+    public static AgeGroup parse(String label) throws WrongAnalyticsQueryException {
+        for (AgeGroup group : values()) {
+            if (group.getLabel().equals(label)) {
+                return group;
+            }
+        }
+        throw new WrongAnalyticsQueryException("Nieznana grupa wiekowa: " + label);
+    }
+}
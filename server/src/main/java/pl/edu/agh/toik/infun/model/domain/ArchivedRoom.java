@@ -0,0 +1,17 @@
+package pl.edu.agh.toik.infun.model.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+@Value
+@AllArgsConstructor
+public class ArchivedRoom {
+    private String id;
+    private int players;
+    private long lastActivity;
+    private long archivedAt;
+
+    public static ArchivedRoom fromArchive(final RoomArchive archive) {
+        return new ArchivedRoom(archive.getId(), archive.getPlayers().size(), archive.getLastActivity(), archive.getArchivedAt());
+    }
+}
@@ -0,0 +1,36 @@
+package pl.edu.agh.toik.infun.model.domain;
+
+import org.springframework.http.MediaType;
+import pl.edu.agh.toik.infun.exceptions.WrongExportFormatException;
+
+import java.nio.charset.StandardCharsets;
+
+public enum ExportFormat {
+    CSV(new MediaType("text", "csv", StandardCharsets.UTF_8), "csv"),
+    NDJSON(new MediaType("application", "x-ndjson", StandardCharsets.UTF_8), "ndjson");
+
+    private final MediaType mediaType;
+    private final String extension;
+
+    ExportFormat(MediaType mediaType, String extension) {
+        this.mediaType = mediaType;
+        this.extension = extension;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public static ExportFormat parse(String format) throws WrongExportFormatException {
+        for (ExportFormat value : values()) {
+            if (value.extension.equalsIgnoreCase(format)) {
+                return value;
+            }
+        }
+        throw new WrongExportFormatException("Nieznany format eksportu: " + format);
+    }
+}
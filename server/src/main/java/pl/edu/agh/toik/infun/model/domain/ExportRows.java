@@ -0,0 +1,19 @@
+package pl.edu.agh.toik.infun.model.domain;
+
+import pl.edu.agh.toik.infun.exceptions.WrongExportFormatException;
+
+/**
+ * What a row of the export is: a player with totals, or one task a player completed.
+ */
+public enum ExportRows {
+    PLAYERS, TASKS;
+
+    public static ExportRows parse(String rows) throws WrongExportFormatException {
+        for (ExportRows value : values()) {
+            if (value.name().equalsIgnoreCase(rows)) {
+                return value;
+            }
+        }
+        throw new WrongExportFormatException("Nieznany rodzaj wierszy eksportu: " + rows);
+    }
+}
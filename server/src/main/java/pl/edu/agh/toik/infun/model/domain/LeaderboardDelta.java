@@ -0,0 +1,13 @@
+package pl.edu.agh.toik.infun.model.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+import java.util.List;
+
+@Value
+@AllArgsConstructor
+public class LeaderboardDelta {
+    private List<UserResult> updated;
+    private List<String> removed;
+}
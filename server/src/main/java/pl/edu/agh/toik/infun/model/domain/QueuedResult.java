@@ -0,0 +1,14 @@
+package pl.edu.agh.toik.infun.model.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+@Value
+@AllArgsConstructor
+public class QueuedResult {
+    private String taskName;
+    private String cookie;
+    private String nick;
+    private String roomId;
+    private double result;
+}
@@ -0,0 +1,67 @@
+package pl.edu.agh.toik.infun.model.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import pl.edu.agh.toik.infun.model.Room;
+import pl.edu.agh.toik.infun.model.User;
+import pl.edu.agh.toik.infun.model.requests.TaskConfig;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Final state of an evicted room, enough to restore it with its results.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoomArchive {
+    private String id;
+    private String creatorCookie;
+    private int taskNumber;
+    private List<TaskConfig> tasksConfig;
+    private long taskSeed;
+    private boolean perPlayerTasks;
+    private long lastActivity;
+    private long archivedAt;
+    private List<Player> players;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Player {
+        private String cookie;
+        private String nick;
+        private int age;
+        private String color;
+        private double score;
+        private double lastResult;
+        private int completedNumber;
+        private double[] taskResults;
+
+        private static Player fromUser(User user) {
+            return new Player(user.getCookieValue(), user.getNick(), user.getAge(), user.getColor(),
+                    user.getScore(), user.getLastResult(), user.getCompletedNumber(), user.getTaskResults());
+        }
+    }
+
+    public static RoomArchive fromRoom(Room room) {
+        return new RoomArchive(room.getId(), room.getCreatorCookie(), room.getTaskNumber(), room.getTasksConfig(),
+                room.getTaskSequence().getSeed(), room.isPerPlayerTasks(), room.getLastActivity(), System.currentTimeMillis(),
+                room.getUserList().stream().map(Player::fromUser).collect(Collectors.toList()));
+    }
+
+    public Room toRoom(String creatorCookie) {
+        Room room = new Room(id, tasksConfig, creatorCookie, taskNumber, taskSeed, perPlayerTasks);
+        for (Player player : players) {
+            room.restoreUser(player.nick, player.age, player.color, player.cookie);
+            room.restoreResult(player.cookie, player.score, player.lastResult, player.completedNumber);
+            if (player.taskResults != null) {
+                room.restoreTaskResults(player.cookie, player.taskResults);
+            }
+        }
+        room.rebuildScoreSketches();
+        return room;
+    }
+}
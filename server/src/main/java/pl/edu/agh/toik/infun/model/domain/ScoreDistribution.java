@@ -0,0 +1,42 @@
+package pl.edu.agh.toik.infun.model.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import pl.edu.agh.toik.infun.utils.ScoreSketch;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Statistics of the results of one task, over the requested rooms and one age group or all players
+ * (null age group). Quantiles, the minimum and the maximum are within the sketch accuracy.
+ */
+@Value
+@AllArgsConstructor
+public class ScoreDistribution {
+    private String task;
+    private String ageGroup;
+    private int rooms;
+    private long count;
+    private Double mean;
+    private Double min;
+    private Double max;
+    private Map<String, Double> quantiles;
+    private List<ScoreSketch.Bin> histogram;
+
+    public static ScoreDistribution fromSketch(String task, AgeGroup ageGroup, int rooms, ScoreSketch sketch, List<Double> quantiles, int bins) {
+        final Map<String, Double> values = new LinkedHashMap<>();
+        for (double q : quantiles) {
+            values.put("p" + BigDecimal.valueOf(q).movePointRight(2).stripTrailingZeros().toPlainString(), orNull(sketch.quantile(q)));
+        }
+        return new ScoreDistribution(task, ageGroup == null ? null : ageGroup.getLabel(), rooms, sketch.getCount(),
+                orNull(sketch.getMean()), orNull(sketch.getMin()), orNull(sketch.getMax()), values, sketch.histogram(bins));
+    }
+
+    // NaN of an empty sketch isn't valid JSON
+    private static Double orNull(double value) {
+        return Double.isNaN(value) ? null : value;
+    }
+}
@@ -10,4 +10,6 @@ public class TaskResult {
     private String room;
     private String nick;
     private int age;
+    // only used by the batched form, single results take the task from the url
+    private String task;
 }
@@ -9,6 +9,7 @@ import java.util.List;
 public class CreateRoomInput {
     public String roomId;
     public int taskNumber = 10;
+    public boolean perPlayerTasks;
     public List<TaskConfig> tasksConfig;
 
     public CreateRoomInput(List<TaskConfig> tasks) {
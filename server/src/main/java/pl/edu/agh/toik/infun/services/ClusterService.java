@@ -0,0 +1,76 @@
+package pl.edu.agh.toik.infun.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import pl.edu.agh.toik.infun.cluster.ClusterNode;
+import pl.edu.agh.toik.infun.cluster.ConsistentHashRing;
+import pl.edu.agh.toik.infun.logging.Events;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Rooms are partitioned across the nodes listed in {@code infun.cluster.nodes} by consistent hashing
+ * of the room id. Every node gets the same list, so all of them agree on the owner without talking
+ * to each other. A node finds itself in the list by {@code infun.cluster.self} or by its own ports.
+ */
+@Service
+public class ClusterService implements IClusterService {
+    @Value("${infun.cluster.nodes:}")
+    private String nodes;
+
+    @Value("${infun.cluster.self:}")
+    private String self;
+
+    @Value("${infun.cluster.virtual-nodes:160}")
+    private int virtualNodes;
+
+    @Value("${server.port}")
+    private int httpsPort;
+
+    @Value("${server.http.port}")
+    private int httpPort;
+
+    private ClusterNode selfNode;
+    private ConsistentHashRing<ClusterNode> ring;
+
+    @PostConstruct
+    public void init() {
+        List<ClusterNode> clusterNodes = Arrays.stream(StringUtils.commaDelimitedListToStringArray(nodes))
+                .filter(StringUtils::hasText)
+                .map(ClusterNode::parse)
+                .collect(Collectors.toList());
+        if (clusterNodes.isEmpty()) {
+            return;
+        }
+        selfNode = StringUtils.hasText(self)
+                ? ClusterNode.parse(self)
+                : clusterNodes.stream()
+                        .filter(node -> node.getHttpsPort() == httpsPort && node.getHttpPort() == httpPort)
+                        .findFirst()
+                        .orElseThrow(() -> new IllegalStateException("Nie znaleziono tego węzła w infun.cluster.nodes, ustaw infun.cluster.self"));
+        if (!clusterNodes.contains(selfNode)) {
+            throw new IllegalStateException("Węzeł " + selfNode + " nie należy do infun.cluster.nodes");
+        }
+        ring = new ConsistentHashRing<>(clusterNodes, virtualNodes);
+        Events.info("cluster.joined", "self", selfNode, "nodes", clusterNodes);
+    }
+
+    @Override
+    public boolean isClustered() {
+        return ring != null;
+    }
+
+    @Override
+    public boolean isLocal(String roomId) {
+        return ring == null || selfNode.equals(ring.get(roomId));
+    }
+
+    @Override
+    public ClusterNode ownerOf(String roomId) {
+        return ring == null ? null : ring.get(roomId);
+    }
+}
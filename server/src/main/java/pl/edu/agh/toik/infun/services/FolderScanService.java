@@ -1,50 +1,166 @@
 package pl.edu.agh.toik.infun.services;
 
 
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import org.springframework.stereotype.Service;
 import org.springframework.util.ResourceUtils;
+import pl.edu.agh.toik.infun.logging.Events;
+import pl.edu.agh.toik.infun.model.requests.TaskConfig;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.*;
+import java.util.*;
+
+import static java.nio.file.StandardWatchEventKinds.*;
 
 @Service
 public class FolderScanService implements IFolderScanService {
 
     private final String CONFIG_FILE_NAME = "config.json";
 
+    private final Gson gson = new Gson();
+
+    // task directory name -> parsed config, replaced as a whole on every change
+    private volatile Map<String, TaskConfig> catalog = Collections.emptyMap();
+    // task name -> config, rebuilt with the catalog, the first directory in order wins a duplicate name
+    private volatile Map<String, TaskConfig> byName = Collections.emptyMap();
+
+    private WatchService watchService;
+
     @PostConstruct
     public void init() {
-        scanFolder();
+        reload();
+        startWatching();
+    }
+
+    @PreDestroy
+    public void destroy() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    @Override
+    public List<TaskConfig> getTaskConfigs() {
+        return Collections.unmodifiableList(new ArrayList<>(catalog.values()));
     }
 
     @Override
-    public List<String> scanFolder() {
-        List<String> result = new ArrayList<>();
+    public Optional<TaskConfig> getTaskConfig(String taskName) {
+        return Optional.ofNullable(byName.get(taskName));
+    }
+
+    @Override
+    public synchronized void reload() {
+        Map<String, TaskConfig> result = new TreeMap<>();
+        File tasksFolder = getTasksFolder();
+        if (tasksFolder != null && tasksFolder.listFiles() != null) {
+            for (File file : tasksFolder.listFiles()) {
+                readTaskConfig(file).ifPresent(config -> result.put(file.getName(), config));
+            }
+        }
+        setCatalog(result);
+    }
+
+    private synchronized void reload(File taskFolder) {
+        Map<String, TaskConfig> result = new TreeMap<>(catalog);
+        Optional<TaskConfig> config = readTaskConfig(taskFolder);
+        if (config.isPresent()) {
+            result.put(taskFolder.getName(), config.get());
+        } else {
+            result.remove(taskFolder.getName());
+        }
+        setCatalog(result);
+    }
+
+    private void setCatalog(Map<String, TaskConfig> configs) {
+        Map<String, TaskConfig> names = new HashMap<>();
+        configs.values().forEach(config -> names.putIfAbsent(config.getName(), config));
+        byName = Collections.unmodifiableMap(names);
+        catalog = Collections.unmodifiableMap(configs);
+    }
+
+    private Optional<TaskConfig> readTaskConfig(File taskFolder) {
+        File configFile = new File(taskFolder, CONFIG_FILE_NAME);
+        if (!taskFolder.isDirectory() || !configFile.isFile()) {
+            return Optional.empty();
+        }
         try {
-            if (ResourceUtils.getFile("classpath:tasks").isDirectory() && ResourceUtils.getFile("classpath:tasks").listFiles() != null)
-                for (File file : ResourceUtils.getFile("classpath:tasks").listFiles()) {
-                    for (File infile : file.listFiles()) {
-                        if (infile.isFile() && infile.getName().equals(CONFIG_FILE_NAME)) {
-                            try {
-                                String content = new String(Files.readAllBytes(Paths.get(infile.getAbsolutePath())));
-                                result.add(content);
-                            } catch (IOException e) {
-                                e.printStackTrace();
-                            }
-                        }
-                    }
-                }
+            String content = new String(Files.readAllBytes(configFile.toPath()));
+            return Optional.ofNullable(gson.fromJson(content, TaskConfig.class));
+        } catch (IOException | JsonParseException e) {
+            Events.error("tasks.config-unreadable", e, "file", configFile);
+            return Optional.empty();
+        }
+    }
+
+    private File getTasksFolder() {
+        try {
+            File tasksFolder = ResourceUtils.getFile("classpath:tasks");
+            return tasksFolder.isDirectory() ? tasksFolder : null;
         } catch (FileNotFoundException e) {
-            e.printStackTrace();
+            // tasks packed inside a jar can't change at runtime, keep the startup snapshot
+            return null;
         }
+    }
 
-        return result;
+    private void startWatching() {
+        File tasksFolder = getTasksFolder();
+        if (tasksFolder == null) {
+            return;
+        }
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            Path tasksPath = tasksFolder.toPath();
+            tasksPath.register(watchService, ENTRY_CREATE, ENTRY_DELETE);
+            for (File file : tasksFolder.listFiles(File::isDirectory)) {
+                file.toPath().register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            }
+        } catch (IOException e) {
+            Events.error("tasks.watch-failed", e, "folder", tasksFolder);
+            return;
+        }
+        Thread watchThread = new Thread(() -> watch(tasksFolder.toPath()), "task-catalog-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
     }
 
-}
\ No newline at end of file
+    private void watch(Path tasksPath) {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path watched = (Path) key.watchable();
+            Set<File> changedTasks = new HashSet<>();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    reload();
+                    continue;
+                }
+                Path changed = watched.resolve((Path) event.context());
+                if (watched.equals(tasksPath)) {
+                    if (event.kind() == ENTRY_CREATE && Files.isDirectory(changed)) {
+                        try {
+                            changed.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+                        } catch (IOException e) {
+                            Events.error("tasks.watch-failed", e, "folder", changed);
+                        }
+                    }
+                    changedTasks.add(changed.toFile());
+                } else if (changed.getFileName().toString().equals(CONFIG_FILE_NAME)) {
+                    changedTasks.add(watched.toFile());
+                }
+            }
+            changedTasks.forEach(this::reload);
+            key.reset();
+        }
+    }
+}
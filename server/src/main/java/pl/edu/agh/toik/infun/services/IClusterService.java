@@ -0,0 +1,16 @@
+package pl.edu.agh.toik.infun.services;
+
+import org.springframework.stereotype.Service;
+import pl.edu.agh.toik.infun.cluster.ClusterNode;
+
+@Service
+public interface IClusterService {
+    boolean isClustered();
+
+    /**
+     * @return true when the room belongs to this node, always true outside of a cluster
+     */
+    boolean isLocal(String roomId);
+
+    ClusterNode ownerOf(String roomId);
+}
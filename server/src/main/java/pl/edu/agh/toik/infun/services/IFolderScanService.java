@@ -1,10 +1,16 @@
 package pl.edu.agh.toik.infun.services;
 
 import org.springframework.stereotype.Service;
+import pl.edu.agh.toik.infun.model.requests.TaskConfig;
 
 import java.util.List;
+import java.util.Optional;
 
 @Service
 public interface IFolderScanService {
-    List<String> scanFolder();
+    List<TaskConfig> getTaskConfigs();
+
+    Optional<TaskConfig> getTaskConfig(String taskName);
+
+    void reload();
 }
@@ -0,0 +1,40 @@
+package pl.edu.agh.toik.infun.services;
+
+import org.springframework.stereotype.Service;
+import pl.edu.agh.toik.infun.model.Room;
+import pl.edu.agh.toik.infun.model.User;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Event methods must be called while holding the room lock, right after the change they record,
+ * so the journal order of a room matches the order its changes were made in.
+ */
+@Service
+public interface IJournalService {
+    /**
+     * Rebuilds rooms from the latest snapshot and the events journaled after it.
+     */
+    List<Room> recover();
+
+    /**
+     * Starts writing events and taking snapshots of the given live room map.
+     */
+    void start(Map<String, Room> rooms);
+
+    void roomCreated(Room room);
+
+    void userJoined(Room room, User user);
+
+    void userLeft(Room room, String cookie);
+
+    void resultApplied(Room room, User user);
+
+    /**
+     * Records the result of every task the user completed, for rooms brought back from an archive.
+     */
+    void taskResultsRestored(Room room, User user);
+
+    void roomRemoved(Room room);
+}
@@ -0,0 +1,14 @@
+package pl.edu.agh.toik.infun.services;
+
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import pl.edu.agh.toik.infun.model.Room;
+
+@Service
+public interface ILeaderboardStreamService {
+    SseEmitter subscribe(Room room);
+
+    void roomChanged(Room room);
+
+    void roomRemoved(Room room);
+}
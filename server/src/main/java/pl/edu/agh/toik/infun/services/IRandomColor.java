@@ -4,4 +4,6 @@ public interface IRandomColor {
     String getColor(int num);
 
     void returnColor(String color);
+
+    void takeColor(String color);
 }
@@ -0,0 +1,24 @@
+package pl.edu.agh.toik.infun.services;
+
+import org.springframework.stereotype.Service;
+import pl.edu.agh.toik.infun.exceptions.NoSuchRoomException;
+import pl.edu.agh.toik.infun.exceptions.NoUserCookieFoundException;
+import pl.edu.agh.toik.infun.exceptions.ResultQueueFullException;
+import pl.edu.agh.toik.infun.exceptions.WrongTaskException;
+import pl.edu.agh.toik.infun.model.domain.TaskResult;
+
+import java.util.List;
+
+@Service
+public interface IResultIngestService {
+    /**
+     * Queues the results of one player, all or none of them.
+     * @param taskName task of every result, or null to take it from each result
+     */
+    void submit(String taskName, String cookie, List<TaskResult> results) throws ResultQueueFullException, NoSuchRoomException, NoUserCookieFoundException, WrongTaskException;
+
+    /**
+     * Waits until the results already submitted by the player are applied, so their next read sees them.
+     */
+    void awaitApplied(String cookie);
+}
@@ -0,0 +1,25 @@
+package pl.edu.agh.toik.infun.services;
+
+import org.springframework.stereotype.Service;
+import pl.edu.agh.toik.infun.exceptions.AccessDeniedException;
+import pl.edu.agh.toik.infun.exceptions.NoSuchRoomException;
+import pl.edu.agh.toik.infun.model.domain.ExportFormat;
+import pl.edu.agh.toik.infun.model.domain.ExportRows;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+@Service
+public interface IResultsExportService {
+    /**
+     * @param roomIds requested rooms, empty for every room of the creator (the whole event)
+     * @return rooms the creator may export
+     */
+    List<String> exportableRoomIds(String cookie, List<String> roomIds) throws NoSuchRoomException, AccessDeniedException;
+
+    /**
+     * Writes the rows room by room straight to the stream.
+     */
+    void export(List<String> roomIds, ExportFormat format, ExportRows rows, OutputStream out) throws IOException;
+}
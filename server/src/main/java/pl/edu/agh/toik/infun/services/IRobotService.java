@@ -0,0 +1,19 @@
+package pl.edu.agh.toik.infun.services;
+
+import org.springframework.stereotype.Service;
+import pl.edu.agh.toik.infun.exceptions.AccessDeniedException;
+import pl.edu.agh.toik.infun.exceptions.NoUserCookieFoundException;
+
+import java.io.IOException;
+import java.util.Map;
+
+@Service
+public interface IRobotService {
+    /**
+     * Forwards a steering command to the robot configured in the player's room.
+     *
+     * @return the robot's JSON answer
+     * @throws AccessDeniedException when the room names a robot that isn't allowed
+     */
+    String control(String cookie, Map<String, String> command) throws NoUserCookieFoundException, AccessDeniedException, IOException;
+}
@@ -0,0 +1,36 @@
+package pl.edu.agh.toik.infun.services;
+
+import org.springframework.stereotype.Service;
+import pl.edu.agh.toik.infun.model.Room;
+import pl.edu.agh.toik.infun.model.domain.ArchivedRoom;
+import pl.edu.agh.toik.infun.model.domain.RoomArchive;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+
+@Service
+public interface IRoomArchiveService {
+    /**
+     * Writes the room to disk, must be called while holding the room lock.
+     */
+    void archive(Room room) throws IOException;
+
+    Optional<RoomArchive> load(String roomId) throws IOException;
+
+    void delete(String roomId) throws IOException;
+
+    boolean contains(String roomId);
+
+    List<String> archivedRoomIds();
+
+    /**
+     * @return archived rooms, most recently archived first
+     */
+    List<ArchivedRoom> list();
+
+    /**
+     * @return ids of the archives kept for longer than the retention, they are not deleted here
+     */
+    List<String> expired(long now);
+}
@@ -0,0 +1,12 @@
+package pl.edu.agh.toik.infun.services;
+
+import org.springframework.stereotype.Service;
+import pl.edu.agh.toik.infun.model.Room;
+
+@Service
+public interface IRoomLifecycleService {
+    /**
+     * Starts watching the room, it is archived once idle for longer than the idle timeout.
+     */
+    void track(Room room);
+}
@@ -4,6 +4,8 @@ import org.springframework.stereotype.Service;
 import pl.edu.agh.toik.infun.exceptions.*;
 import pl.edu.agh.toik.infun.model.ConfigDTO;
 import pl.edu.agh.toik.infun.model.Room;
+import pl.edu.agh.toik.infun.model.TaskConfigResponse;
+import pl.edu.agh.toik.infun.model.domain.QueuedResult;
 import pl.edu.agh.toik.infun.model.domain.UserResult;
 import pl.edu.agh.toik.infun.model.requests.LastResultResponse;
 import pl.edu.agh.toik.infun.model.requests.TaskConfig;
@@ -13,8 +15,6 @@ import java.util.Optional;
 
 @Service
 public interface IRoomService {
-    List<TaskConfig> createDefaultTasksConfig(List<String> jsons);
-
     void addRoom(Room room) throws RoomAlreadyExistsException;
 
     void addUser(String name, int age, String room, String cookie) throws UserAlreadyExistsException, NoSuchRoomException;
@@ -25,6 +25,11 @@ public interface IRoomService {
 
     ConfigDTO getConfig(String task, String cookie) throws NoUserCookieFoundException;
 
+    /**
+     * The same config, already serialized, for the {@code /{task}/config} endpoint.
+     */
+    TaskConfigResponse getConfigResponse(String task, String cookie) throws NoUserCookieFoundException;
+
     String getNextTask(String cookie) throws NoMoreAvailableTasksException, NoUserCookieFoundException;
 
     boolean isCreator(String roomId, String cookie);
@@ -33,11 +38,40 @@ public interface IRoomService {
 
     public Optional<Room> getRoomById(String roomId);
 
+    /**
+     * @param roomIds requested rooms, empty for every room of the creator (the whole event)
+     * @return rooms whose results the creator may read
+     */
+    List<String> roomIdsReadableBy(String cookie, List<String> roomIds) throws NoSuchRoomException, AccessDeniedException;
+
     void removeRoom(String roomId, String cookie) throws CannotRemoveRoomException;
 
+    /**
+     * Archives the room and drops it from memory, unless it was used within the idle timeout.
+     *
+     * @return true when the room was evicted
+     */
+    boolean evictIdleRoom(Room room, long idleTimeout);
+
+    /**
+     * Brings an archived room back, owned by the given creator cookie.
+     */
+    void restoreRoom(String roomId, String cookie) throws NoSuchRoomException, RoomAlreadyExistsException;
+
+    /**
+     * Deletes the archives kept past their retention and frees their ids.
+     *
+     * @return the number of archives deleted
+     */
+    int expireArchivedRooms(long now);
+
     void addResult(String taskName, String cookie, String nick, String room, double result) throws NoSuchRoomException, NoUserCookieFoundException;
 
-    List<UserResult> getResults(String roomId, String cookie) throws NoSuchRoomException, AccessDeniedException;
+    void checkResultOwner(String cookie, String nick, String room) throws NoSuchRoomException, NoUserCookieFoundException;
+
+    void addResults(String room, List<QueuedResult> results) throws NoSuchRoomException;
+
+    List<UserResult> getResults(String roomId, String cookie, int offset, int limit) throws NoSuchRoomException, AccessDeniedException;
 
     String generateRandomRoomId();
 
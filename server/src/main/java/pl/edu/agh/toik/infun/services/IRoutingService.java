@@ -0,0 +1,16 @@
+package pl.edu.agh.toik.infun.services;
+
+import org.springframework.stereotype.Service;
+
+@Service
+public interface IRoutingService {
+    /**
+     * @return host players on the network reach this server at
+     */
+    String getAdvertisedHost();
+
+    /**
+     * @return absolute https URL of the path on the advertised host
+     */
+    String externalUrl(String path);
+}
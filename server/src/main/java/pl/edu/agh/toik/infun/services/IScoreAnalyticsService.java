@@ -0,0 +1,21 @@
+package pl.edu.agh.toik.infun.services;
+
+import org.springframework.stereotype.Service;
+import pl.edu.agh.toik.infun.model.domain.AgeGroup;
+import pl.edu.agh.toik.infun.model.domain.ScoreDistribution;
+
+import java.util.List;
+
+@Service
+public interface IScoreAnalyticsService {
+    /**
+     * Merges the score sketches of the rooms.
+     *
+     * @param task      a single task, null for every task played in the rooms
+     * @param ageGroup  a single age group, null for all players
+     * @param byAge     one distribution per task and age group instead of one per task
+     * @param quantiles quantiles to report, between 0 and 1
+     * @param bins      number of histogram bins
+     */
+    List<ScoreDistribution> distributions(List<String> roomIds, String task, AgeGroup ageGroup, boolean byAge, List<Double> quantiles, int bins);
+}
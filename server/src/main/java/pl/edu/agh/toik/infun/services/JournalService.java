@@ -0,0 +1,377 @@
+package pl.edu.agh.toik.infun.services;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pl.edu.agh.toik.infun.journal.EventLog;
+import pl.edu.agh.toik.infun.logging.Events;
+import pl.edu.agh.toik.infun.model.Room;
+import pl.edu.agh.toik.infun.model.User;
+import pl.edu.agh.toik.infun.model.requests.TaskConfig;
+
+import javax.annotation.PreDestroy;
+import java.io.*;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Journals room changes to an {@link EventLog}. Request threads only encode the event and queue it,
+ * a single writer appends whatever has queued up and forces it to disk once per batch (group commit).
+ *
+ * A snapshot is taken room by room under the room lock: the writer drains the queue, notes the log
+ * position and encodes the room, so each room's snapshot is exact without stopping other rooms.
+ * Recovery loads the snapshot and replays, per room, only the events written after its position.
+ */
+@Service
+public class JournalService implements IJournalService {
+    private static final String SNAPSHOT = "snapshot.bin";
+    private static final Type TASKS_CONFIG_TYPE = new TypeToken<List<TaskConfig>>() {}.getType();
+
+    private static final byte ROOM_CREATED = 1;
+    private static final byte USER_JOINED = 2;
+    private static final byte USER_LEFT = 3;
+    private static final byte RESULT = 4;
+    private static final byte ROOM_REMOVED = 5;
+    // written by snapshots and restored rooms, the last RESULT record only has the latest task
+    private static final byte TASK_RESULTS = 6;
+
+    @Value("${infun.journal.enabled:true}")
+    private boolean enabled;
+
+    @Value("${infun.journal.dir:journal}")
+    private String directory;
+
+    @Value("${infun.journal.segment-size:16777216}")
+    private int segmentSize;
+
+    @Value("${infun.journal.snapshot-interval-ms:60000}")
+    private long snapshotInterval;
+
+    private final Gson gson = new Gson();
+    private final BlockingQueue<byte[]> queue = new LinkedBlockingQueue<>();
+    // held by the writer for each batch and by destroy() for the last one, so the log is never
+    // touched by both, even when the writer doesn't stop in time
+    private final Object writeLock = new Object();
+    private EventLog log;
+    private Map<String, Room> rooms;
+    private Thread writer;
+    private volatile boolean started;
+    private volatile boolean running;
+    private long lastSnapshot;
+    private boolean dirty;
+
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    @Override
+    public List<Room> recover() {
+        if (!enabled) {
+            return Collections.emptyList();
+        }
+        final long started = System.currentTimeMillis();
+        final Path path = Paths.get(directory);
+        final Map<String, Room> recovered = new LinkedHashMap<>();
+        final Map<String, Long> snapshotPositions = new HashMap<>();
+        try {
+            int fromSegment = 0;
+            final Path snapshot = path.resolve(SNAPSHOT);
+            if (Files.exists(snapshot)) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+                    fromSegment = in.readInt();
+                    final int roomCount = in.readInt();
+                    for (int i = 0; i < roomCount; i++) {
+                        final long position = in.readLong();
+                        final int recordCount = in.readInt();
+                        for (int j = 0; j < recordCount; j++) {
+                            final byte[] record = new byte[in.readInt()];
+                            in.readFully(record);
+                            snapshotPositions.put(apply(recovered, record), position);
+                        }
+                    }
+                }
+            }
+            log = new EventLog(path, segmentSize);
+            log.read(fromSegment, (position, record) -> {
+                final Long snapshotPosition = snapshotPositions.get(roomIdOf(record));
+                if (snapshotPosition == null || position >= snapshotPosition) {
+                    apply(recovered, record);
+                }
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException("Nie można odtworzyć pokoi z dziennika " + path.toAbsolutePath(), e);
+        }
+        Events.info("journal.recovered", "rooms", recovered.size(), "dir", path.toAbsolutePath(),
+                "ms", System.currentTimeMillis() - started);
+        return new ArrayList<>(recovered.values());
+    }
+
+    @Override
+    public void start(Map<String, Room> rooms) {
+        if (!enabled) {
+            return;
+        }
+        this.rooms = rooms;
+        this.lastSnapshot = System.currentTimeMillis();
+        this.running = true;
+        this.started = true;
+        writer = new Thread(this::run, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException, IOException {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+        synchronized (writeLock) {
+            writePending();
+            snapshot();
+            log.close();
+        }
+    }
+
+    @Override
+    public void roomCreated(Room room) {
+        append(roomCreatedRecord(room));
+    }
+
+    @Override
+    public void userJoined(Room room, User user) {
+        append(userJoinedRecord(room, user));
+    }
+
+    @Override
+    public void userLeft(Room room, String cookie) {
+        append(encode(USER_LEFT, room.getId(), out -> out.writeUTF(cookie)));
+    }
+
+    @Override
+    public void resultApplied(Room room, User user) {
+        append(resultRecord(room, user));
+    }
+
+    @Override
+    public void taskResultsRestored(Room room, User user) {
+        append(taskResultsRecord(room, user));
+    }
+
+    @Override
+    public void roomRemoved(Room room) {
+        append(encode(ROOM_REMOVED, room.getId(), out -> {
+        }));
+    }
+
+    private void append(byte[] record) {
+        if (started) {
+            queue.add(record);
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                synchronized (writeLock) {
+                    if (!running) {
+                        break;
+                    }
+                    final byte[] first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first != null) {
+                        log.append(first);
+                        writePending();
+                        dirty = true;
+                    }
+                    if (dirty && System.currentTimeMillis() - lastSnapshot >= snapshotInterval) {
+                        snapshot();
+                    }
+                }
+            } catch (InterruptedException ignored) {
+            } catch (IOException e) {
+                Events.error("journal.write-failed", e, "dir", directory);
+            }
+        }
+    }
+
+    // one force for everything that queued up since the last batch
+    private void writePending() throws IOException {
+        appendPending();
+        log.force();
+    }
+
+    private void appendPending() throws IOException {
+        final List<byte[]> batch = new ArrayList<>();
+        queue.drainTo(batch);
+        for (byte[] record : batch) {
+            log.append(record);
+        }
+    }
+
+    private void snapshot() throws IOException {
+        log.roll();
+        final int fromSegment = log.segment();
+        final List<Long> positions = new ArrayList<>();
+        final List<List<byte[]>> roomRecords = new ArrayList<>();
+        for (Room room : rooms.values()) {
+            synchronized (room) {
+                if (rooms.get(room.getId()) != room) {
+                    continue;
+                }
+                appendPending();
+                positions.add(log.position());
+                final List<byte[]> records = new ArrayList<>();
+                records.add(roomCreatedRecord(room));
+                for (User user : room.getUserList()) {
+                    records.add(userJoinedRecord(room, user));
+                    records.add(resultRecord(room, user));
+                    records.add(taskResultsRecord(room, user));
+                }
+                roomRecords.add(records);
+            }
+        }
+        log.force();
+        final Path path = Paths.get(directory);
+        final Path temporary = path.resolve(SNAPSHOT + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            out.writeInt(fromSegment);
+            out.writeInt(roomRecords.size());
+            for (int i = 0; i < roomRecords.size(); i++) {
+                out.writeLong(positions.get(i));
+                out.writeInt(roomRecords.get(i).size());
+                for (byte[] record : roomRecords.get(i)) {
+                    out.writeInt(record.length);
+                    out.write(record);
+                }
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temporary, path.resolve(SNAPSHOT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.deleteBefore(fromSegment);
+        lastSnapshot = System.currentTimeMillis();
+        dirty = false;
+    }
+
+    private byte[] roomCreatedRecord(Room room) {
+        return encode(ROOM_CREATED, room.getId(), out -> {
+            out.writeUTF(room.getCreatorCookie());
+            out.writeInt(room.getTaskNumber());
+            writeString(out, gson.toJson(room.getTasksConfig()));
+            out.writeLong(room.getTaskSequence().getSeed());
+            out.writeBoolean(room.isPerPlayerTasks());
+        });
+    }
+
+    private byte[] userJoinedRecord(Room room, User user) {
+        return encode(USER_JOINED, room.getId(), out -> {
+            out.writeUTF(user.getCookieValue());
+            writeString(out, user.getNick());
+            out.writeInt(user.getAge());
+            out.writeUTF(user.getColor());
+        });
+    }
+
+    private byte[] resultRecord(Room room, User user) {
+        return encode(RESULT, room.getId(), out -> {
+            out.writeUTF(user.getCookieValue());
+            out.writeDouble(user.getScore());
+            out.writeDouble(user.getLastResult());
+            out.writeInt(user.getCompletedNumber());
+        });
+    }
+
+    private byte[] taskResultsRecord(Room room, User user) {
+        return encode(TASK_RESULTS, room.getId(), out -> {
+            out.writeUTF(user.getCookieValue());
+            final double[] taskResults = user.getTaskResults();
+            out.writeInt(taskResults.length);
+            for (double result : taskResults) {
+                out.writeDouble(result);
+            }
+        });
+    }
+
+    private static byte[] encode(byte type, String roomId, RecordWriter body) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(type);
+            out.writeUTF(roomId);
+            body.write(out);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String roomIdOf(byte[] record) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        in.readByte();
+        return in.readUTF();
+    }
+
+    /**
+     * @return id of the room the record belongs to
+     */
+    private String apply(Map<String, Room> recovered, byte[] record) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        final byte type = in.readByte();
+        final String roomId = in.readUTF();
+        if (type == ROOM_CREATED) {
+            final String creatorCookie = in.readUTF();
+            final int taskNumber = in.readInt();
+            final List<TaskConfig> tasksConfig = gson.fromJson(readString(in), TASKS_CONFIG_TYPE);
+            recovered.put(roomId, new Room(roomId, tasksConfig, creatorCookie, taskNumber, in.readLong(), in.readBoolean()));
+            return roomId;
+        }
+        if (type == ROOM_REMOVED) {
+            recovered.remove(roomId);
+            return roomId;
+        }
+        final Room room = recovered.get(roomId);
+        if (room == null) {
+            return roomId;
+        }
+        final String cookie = in.readUTF();
+        if (type == USER_JOINED) {
+            final String nick = readString(in);
+            final int age = in.readInt();
+            room.restoreUser(nick, age, in.readUTF(), cookie);
+        } else if (type == USER_LEFT) {
+            room.removeUser(cookie);
+        } else if (type == RESULT) {
+            room.restoreResult(cookie, in.readDouble(), in.readDouble(), in.readInt());
+        } else if (type == TASK_RESULTS) {
+            final double[] taskResults = new double[in.readInt()];
+            for (int i = 0; i < taskResults.length; i++) {
+                taskResults[i] = in.readDouble();
+            }
+            room.restoreTaskResults(cookie, taskResults);
+        }
+        return roomId;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
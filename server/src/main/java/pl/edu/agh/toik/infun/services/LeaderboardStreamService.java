@@ -0,0 +1,197 @@
+package pl.edu.agh.toik.infun.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import pl.edu.agh.toik.infun.model.Room;
+import pl.edu.agh.toik.infun.model.domain.LeaderboardDelta;
+import pl.edu.agh.toik.infun.model.domain.UserResult;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * A stream per room, every subscriber gets a snapshot and then deltas against it. Snapshots and deltas
+ * are computed and sent under the stream lock, so a subscriber never gets a delta older than its snapshot.
+ */
+@Service
+public class LeaderboardStreamService implements ILeaderboardStreamService {
+    private static final String SNAPSHOT_EVENT = "snapshot";
+    private static final String DELTA_EVENT = "delta";
+    private static final String REMOVED_EVENT = "removed";
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private IRoomService roomService;
+
+    private final Map<String, RoomStream> streams = new ConcurrentHashMap<>();
+
+    private static class RoomStream {
+        private final Room room;
+        private final Set<SseEmitter> emitters = new CopyOnWriteArraySet<>();
+        private Map<String, UserResult> lastSent;
+        private volatile boolean dirty;
+        // set once the room is gone, no emitter is added after that
+        private boolean closed;
+
+        private RoomStream(Room room) {
+            this.room = room;
+        }
+    }
+
+    public LeaderboardStreamService() {
+    }
+
+    /**
+     * Wires the service by hand, without Spring, for publishing changes only: subscribing also needs the room service.
+     */
+    public LeaderboardStreamService(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public SseEmitter subscribe(Room room) {
+        final SseEmitter emitter = new SseEmitter(0L);
+        if (!isLive(room)) {
+            sendRemoved(emitter, room);
+            return emitter;
+        }
+        final RoomStream stream = streams.computeIfAbsent(room.getId(), id -> new RoomStream(room));
+        emitter.onCompletion(() -> stream.emitters.remove(emitter));
+        emitter.onTimeout(() -> stream.emitters.remove(emitter));
+        emitter.onError(e -> stream.emitters.remove(emitter));
+
+        synchronized (stream) {
+            if (stream.closed || stream.room != room) {
+                sendRemoved(emitter, room);
+                return emitter;
+            }
+            if (stream.lastSent == null) {
+                stream.lastSent = currentResults(room);
+            } else {
+                // the snapshot must match what later deltas are computed against
+                stream.dirty = true;
+            }
+            final String snapshot = serialize(new LeaderboardDelta(new ArrayList<>(stream.lastSent.values()), Collections.emptyList()));
+            if (send(stream, emitter, SNAPSHOT_EVENT, snapshot)) {
+                stream.emitters.add(emitter);
+            }
+        }
+        // removed between the check and creating the stream, whose removal then found nothing to close
+        if (!isLive(room)) {
+            roomRemoved(room);
+        }
+        return emitter;
+    }
+
+    @Override
+    public void roomChanged(Room room) {
+        final RoomStream stream = streams.get(room.getId());
+        if (stream != null) {
+            stream.dirty = true;
+        }
+    }
+
+    @Override
+    public void roomRemoved(Room room) {
+        final RoomStream stream = streams.get(room.getId());
+        if (stream == null || stream.room != room) {
+            return;
+        }
+        streams.remove(room.getId(), stream);
+        synchronized (stream) {
+            stream.closed = true;
+            for (SseEmitter emitter : stream.emitters) {
+                send(stream, emitter, REMOVED_EVENT, room.getId());
+                emitter.complete();
+            }
+            stream.emitters.clear();
+        }
+    }
+
+    @Scheduled(fixedDelay = 250)
+    public void publishChanges() {
+        for (RoomStream stream : streams.values()) {
+            if (!stream.dirty || stream.emitters.isEmpty()) {
+                continue;
+            }
+            synchronized (stream) {
+                if (stream.closed) {
+                    continue;
+                }
+                stream.dirty = false;
+                final Map<String, UserResult> current = currentResults(stream.room);
+                final LeaderboardDelta delta = diff(stream.lastSent, current);
+                stream.lastSent = current;
+                if (delta.getUpdated().isEmpty() && delta.getRemoved().isEmpty()) {
+                    continue;
+                }
+                final String payload = serialize(delta);
+                for (SseEmitter emitter : stream.emitters) {
+                    send(stream, emitter, DELTA_EVENT, payload);
+                }
+            }
+        }
+    }
+
+    private boolean isLive(Room room) {
+        return roomService.getRoomById(room.getId()).orElse(null) == room;
+    }
+
+    private void sendRemoved(SseEmitter emitter, Room room) {
+        try {
+            emitter.send(SseEmitter.event().name(REMOVED_EVENT).data(room.getId()));
+        } catch (IOException | IllegalStateException ignored) {
+        }
+        emitter.complete();
+    }
+
+    private Map<String, UserResult> currentResults(Room room) {
+        final Map<String, UserResult> results = new LinkedHashMap<>();
+        room.getLeaderboard()
+                .top(Integer.MAX_VALUE)
+                .forEach(user -> results.put(user.getNick(), UserResult.fromUser(user)));
+        return results;
+    }
+
+    private LeaderboardDelta diff(Map<String, UserResult> previous, Map<String, UserResult> current) {
+        final List<UserResult> updated = new ArrayList<>();
+        current.forEach((nick, result) -> {
+            if (!result.equals(previous.get(nick))) {
+                updated.add(result);
+            }
+        });
+        final List<String> removed = new ArrayList<>();
+        previous.keySet().forEach(nick -> {
+            if (!current.containsKey(nick)) {
+                removed.add(nick);
+            }
+        });
+        return new LeaderboardDelta(updated, removed);
+    }
+
+    private String serialize(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private boolean send(RoomStream stream, SseEmitter emitter, String event, String payload) {
+        try {
+            emitter.send(SseEmitter.event().name(event).data(payload));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            stream.emitters.remove(emitter);
+            return false;
+        }
+    }
+}
@@ -48,6 +48,10 @@ public class RandomColor implements IRandomColor {
         if (num < colors.size()) {
             return colors.get(num);
         }
+        if (num >= colors.size() * colors.size()) {
+            // past every pair of base colors, spread the rest over the whole RGB space
+            return String.format("#%06x", (num * 0x9E3779B1) >>> 8);
+        }
         final int colorIndex = num / colors.size();
         final int indexDiff = num % colors.size();
         final String color1 = colors.get(colorIndex);
@@ -64,4 +68,8 @@ public class RandomColor implements IRandomColor {
     public void returnColor(final String color) {
         this.usedColors.remove(color);
     }
+
+    public void takeColor(final String color) {
+        this.usedColors.add(color);
+    }
 }
@@ -0,0 +1,167 @@
+package pl.edu.agh.toik.infun.services;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pl.edu.agh.toik.infun.exceptions.NoSuchRoomException;
+import pl.edu.agh.toik.infun.exceptions.NoUserCookieFoundException;
+import pl.edu.agh.toik.infun.exceptions.ResultQueueFullException;
+import pl.edu.agh.toik.infun.exceptions.WrongTaskException;
+import pl.edu.agh.toik.infun.logging.Events;
+import pl.edu.agh.toik.infun.model.domain.QueuedResult;
+import pl.edu.agh.toik.infun.model.domain.TaskResult;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Results are validated on the request thread and applied by a single worker, which drains the queue
+ * in batches and takes each room lock once per batch. The queue is bounded by a semaphore so a whole
+ * batched submission is admitted or rejected at once.
+ */
+@Service
+public class ResultIngestService implements IResultIngestService {
+    @Autowired
+    private IRoomService roomService;
+
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    @Value("${infun.results.queue-capacity:4096}")
+    private int queueCapacity;
+
+    @Value("${infun.results.batch-size:256}")
+    private int batchSize;
+
+    @Value("${infun.results.admission-timeout-ms:500}")
+    private long admissionTimeout;
+
+    @Value("${infun.results.await-timeout-ms:2000}")
+    private long awaitTimeout;
+
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Map<String, CompletableFuture<Void>> lastSubmitted = new ConcurrentHashMap<>();
+    private Semaphore capacity;
+    private Meter rejected;
+    private Thread worker;
+    private volatile boolean running = true;
+
+    private static class Pending {
+        private final QueuedResult result;
+        // set on the last result of a submission only
+        private final CompletableFuture<Void> applied;
+
+        private Pending(QueuedResult result, CompletableFuture<Void> applied) {
+            this.result = result;
+            this.applied = applied;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        capacity = new Semaphore(queueCapacity);
+        metricRegistry.register(MetricRegistry.name(ResultIngestService.class, "pending"), (Gauge<Integer>) queue::size);
+        rejected = metricRegistry.meter(MetricRegistry.name(ResultIngestService.class, "rejected"));
+        worker = new Thread(this::run, "result-ingest");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        running = false;
+        worker.interrupt();
+        worker.join(TimeUnit.SECONDS.toMillis(5));
+        List<Pending> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        apply(remaining);
+    }
+
+    @Override
+    public void submit(String taskName, String cookie, List<TaskResult> results) throws ResultQueueFullException, NoSuchRoomException, NoUserCookieFoundException, WrongTaskException {
+        List<QueuedResult> queued = new ArrayList<>(results.size());
+        for (TaskResult result : results) {
+            String task = taskName != null ? taskName : result.getTask();
+            if (task == null) {
+                throw new WrongTaskException("Brak nazwy zadania dla wyniku " + result.getResult());
+            }
+            roomService.checkResultOwner(cookie, result.getNick(), result.getRoom());
+            queued.add(new QueuedResult(task, cookie, result.getNick(), result.getRoom(), result.getResult()));
+        }
+        if (queued.isEmpty()) {
+            return;
+        }
+        try {
+            if (!capacity.tryAcquire(queued.size(), admissionTimeout, TimeUnit.MILLISECONDS)) {
+                rejected.mark(queued.size());
+                throw new ResultQueueFullException("Serwer jest przeciążony, spróbuj ponownie za chwilę");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResultQueueFullException("Serwer jest przeciążony, spróbuj ponownie za chwilę");
+        }
+        CompletableFuture<Void> applied = new CompletableFuture<>();
+        lastSubmitted.put(cookie, applied);
+        for (int i = 0; i < queued.size(); i++) {
+            queue.add(new Pending(queued.get(i), i == queued.size() - 1 ? applied : null));
+        }
+    }
+
+    @Override
+    public void awaitApplied(String cookie) {
+        CompletableFuture<Void> applied = lastSubmitted.get(cookie);
+        if (applied == null) {
+            return;
+        }
+        try {
+            applied.get(awaitTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException ignored) {
+        }
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(batch, batchSize - 1);
+            apply(batch);
+            batch.clear();
+        }
+    }
+
+    private void apply(List<Pending> batch) {
+        Map<String, List<QueuedResult>> byRoom = new LinkedHashMap<>();
+        for (Pending pending : batch) {
+            byRoom.computeIfAbsent(pending.result.getRoomId(), id -> new ArrayList<>()).add(pending.result);
+        }
+        byRoom.forEach((roomId, results) -> {
+            try {
+                roomService.addResults(roomId, results);
+            } catch (NoSuchRoomException ignored) {
+                // the room was removed after the results were accepted
+            } catch (RuntimeException e) {
+                Events.error("results.apply-failed", e, "room", roomId, "results", results.size());
+            } finally {
+                // only now, so the semaphore also bounds the results taken off the queue but not applied yet
+                capacity.release(results.size());
+            }
+        });
+        for (Pending pending : batch) {
+            if (pending.applied != null) {
+                pending.applied.complete(null);
+                lastSubmitted.remove(pending.result.getCookie(), pending.applied);
+            }
+        }
+    }
+}
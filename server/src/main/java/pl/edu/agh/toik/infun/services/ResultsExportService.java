@@ -0,0 +1,149 @@
+package pl.edu.agh.toik.infun.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import pl.edu.agh.toik.infun.exceptions.AccessDeniedException;
+import pl.edu.agh.toik.infun.exceptions.NoSuchRoomException;
+import pl.edu.agh.toik.infun.model.Room;
+import pl.edu.agh.toik.infun.model.User;
+import pl.edu.agh.toik.infun.model.domain.ExportFormat;
+import pl.edu.agh.toik.infun.model.domain.ExportRows;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Rows are written as they are read from the rooms, one room at a time, and the stream is flushed
+ * after every room, so memory use doesn't depend on the size of the export. Reads don't lock the
+ * rooms, an export taken during play may mix values from just before and after a result.
+ */
+@Service
+public class ResultsExportService implements IResultsExportService {
+    private static final String[] PLAYER_COLUMNS = {"room", "nick", "age", "color", "score", "completed", "rank"};
+    private static final String[] TASK_COLUMNS = {"room", "nick", "age", "position", "task", "result"};
+
+    @Autowired
+    private IRoomService roomService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private interface RowWriter extends Closeable {
+        void row(Object... values) throws IOException;
+
+        void flush() throws IOException;
+    }
+
+    @Override
+    public List<String> exportableRoomIds(String cookie, List<String> roomIds) throws NoSuchRoomException, AccessDeniedException {
+        return roomService.roomIdsReadableBy(cookie, roomIds);
+    }
+
+    @Override
+    public void export(List<String> roomIds, ExportFormat format, ExportRows rows, OutputStream out) throws IOException {
+        final String[] columns = rows == ExportRows.PLAYERS ? PLAYER_COLUMNS : TASK_COLUMNS;
+        try (RowWriter writer = format == ExportFormat.CSV ? csvWriter(out, columns) : ndjsonWriter(out, columns)) {
+            for (String roomId : roomIds) {
+                // a room removed since the request started is skipped
+                Optional<Room> room = roomService.getRoomById(roomId);
+                if (room.isPresent()) {
+                    writeRoom(room.get(), rows, writer);
+                    writer.flush();
+                }
+            }
+        }
+    }
+
+    private static void writeRoom(Room room, ExportRows rows, RowWriter writer) throws IOException {
+        for (User user : room.getUserList()) {
+            if (rows == ExportRows.PLAYERS) {
+                writer.row(room.getId(), user.getNick(), user.getAge(), user.getColor(), user.getScore(),
+                        user.getCompletedNumber(), room.getLeaderboard().rankOf(user));
+                continue;
+            }
+            final double[] taskResults = user.getTaskResults();
+            for (int position = 0; position < taskResults.length; position++) {
+                writer.row(room.getId(), user.getNick(), user.getAge(), position + 1, user.getTask(position),
+                        taskResults[position]);
+            }
+        }
+    }
+
+    private static RowWriter csvWriter(OutputStream out, String[] columns) throws IOException {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        final RowWriter rowWriter = new RowWriter() {
+            @Override
+            public void row(Object... values) throws IOException {
+                for (int i = 0; i < values.length; i++) {
+                    if (i > 0) {
+                        writer.write(',');
+                    }
+                    writer.write(values[i] instanceof String ? csvCell((String) values[i]) : String.valueOf(values[i]));
+                }
+                writer.write("\r\n");
+            }
+
+            @Override
+            public void flush() throws IOException {
+                writer.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                // the response stream is closed by the container
+                writer.flush();
+            }
+        };
+        rowWriter.row((Object[]) columns);
+        return rowWriter;
+    }
+
+    private RowWriter ndjsonWriter(OutputStream out, String[] columns) throws IOException {
+        final JsonGenerator generator = objectMapper.getFactory().createGenerator(out)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        // rows are separated by the newline written after each of them
+        generator.setRootValueSeparator(new SerializedString(""));
+        return new RowWriter() {
+            @Override
+            public void row(Object... values) throws IOException {
+                generator.writeStartObject();
+                for (int i = 0; i < values.length; i++) {
+                    // typed writes, writeObjectField would go through the object mapper for every value
+                    if (values[i] instanceof Integer) {
+                        generator.writeNumberField(columns[i], (Integer) values[i]);
+                    } else if (values[i] instanceof Double) {
+                        generator.writeNumberField(columns[i], (Double) values[i]);
+                    } else {
+                        generator.writeStringField(columns[i], String.valueOf(values[i]));
+                    }
+                }
+                generator.writeEndObject();
+                generator.writeRaw('\n');
+            }
+
+            @Override
+            public void flush() throws IOException {
+                generator.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                generator.close();
+            }
+        };
+    }
+
+    private static String csvCell(String value) {
+        // a leading =, +, - or @ would be read as a formula by spreadsheets
+        final String cell = !value.isEmpty() && "=+-@".indexOf(value.charAt(0)) >= 0 ? "'" + value : value;
+        if (cell.indexOf(',') < 0 && cell.indexOf('"') < 0 && cell.indexOf('\n') < 0 && cell.indexOf('\r') < 0) {
+            return cell;
+        }
+        return '"' + cell.replace("\"", "\"\"") + '"';
+    }
+}
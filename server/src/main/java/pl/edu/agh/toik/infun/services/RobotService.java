@@ -0,0 +1,96 @@
+package pl.edu.agh.toik.infun.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.util.UriComponentsBuilder;
+import pl.edu.agh.toik.infun.exceptions.AccessDeniedException;
+import pl.edu.agh.toik.infun.exceptions.NoUserCookieFoundException;
+import pl.edu.agh.toik.infun.model.ConfigDTO;
+import pl.edu.agh.toik.infun.model.requests.ParameterConfig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The robot only speaks plain http, which a page served over https may not call. The robot page
+ * calls this server instead and the command is relayed from here, so the task runs on the same
+ * origin as every other one.
+ *
+ * Commands only go to the configured robot or to one listed in {@code infun.robot.allowed}
+ * (host:port entries), a room config naming any other address is refused, otherwise anyone
+ * creating a room could make the server send requests into its network.
+ */
+@Service
+public class RobotService implements IRobotService {
+    private static final String TASK = "robot";
+    // what the robot page sends, nothing else is passed on
+    private static final List<String> COMMAND_PARAMS = Arrays.asList("direction", "mousedown", "user_id", "user_age");
+
+    @Autowired
+    private IRoomService roomService;
+
+    @Value("${infun.robot.host:127.0.0.1}")
+    private String defaultHost;
+
+    @Value("${infun.robot.port:5000}")
+    private int defaultPort;
+
+    @Value("${infun.robot.timeout-ms:500}")
+    private int timeout;
+
+    @Value("${infun.robot.allowed:}")
+    private List<String> allowed;
+
+    @Override
+    public String control(String cookie, Map<String, String> command) throws NoUserCookieFoundException, AccessDeniedException, IOException {
+        ConfigDTO config = roomService.getConfig(TASK, cookie);
+        String host = parameter(config, "ip").orElse(defaultHost);
+        int port = parameter(config, "port").filter(value -> value.matches("\\d+")).map(Integer::valueOf).orElse(defaultPort);
+        if (!isAllowed(host, port)) {
+            throw new AccessDeniedException("Robot pod adresem " + host + ":" + port + " nie jest dozwolony");
+        }
+        UriComponentsBuilder uri = UriComponentsBuilder.newInstance()
+                .scheme("http").host(host).port(port).path("/control_robot");
+        command.forEach((name, value) -> {
+            if (COMMAND_PARAMS.contains(name)) {
+                uri.queryParam(name, value);
+            }
+        });
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(uri.encode().toUriString()).openConnection();
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+        try (InputStream in = connection.getInputStream()) {
+            return StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private boolean isAllowed(String host, int port) {
+        if (host.equalsIgnoreCase(defaultHost) && port == defaultPort) {
+            return true;
+        }
+        return allowed.stream()
+                .map(String::trim)
+                .anyMatch(entry -> entry.equalsIgnoreCase(host + ":" + port));
+    }
+
+    private static Optional<String> parameter(ConfigDTO config, String name) {
+        return config.getConfig().stream()
+                .filter(parameter -> name.equals(parameter.getName()))
+                .map(ParameterConfig::getValue)
+                .filter(value -> value != null && !value.trim().isEmpty())
+                .map(String::trim)
+                .findFirst();
+    }
+}
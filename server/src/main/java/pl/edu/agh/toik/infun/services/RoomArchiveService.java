@@ -0,0 +1,159 @@
+package pl.edu.agh.toik.infun.services;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pl.edu.agh.toik.infun.logging.Events;
+import pl.edu.agh.toik.infun.model.Room;
+import pl.edu.agh.toik.infun.model.domain.ArchivedRoom;
+import pl.edu.agh.toik.infun.model.domain.RoomArchive;
+
+import javax.annotation.PostConstruct;
+import java.io.*;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+/**
+ * One JSON file per archived room in {@code infun.rooms.archive-dir}. Only the summaries are kept in
+ * memory, read once at startup and updated on every change, so listing doesn't touch the files.
+ * Archives older than {@code infun.rooms.archive-retention-ms} are listed by {@link #expired} and
+ * deleted by the room service, which releases their room ids: an archived room keeps its id
+ * reserved until then, so it can be restored under the same id.
+ */
+@Service
+public class RoomArchiveService implements IRoomArchiveService {
+    private static final String SUFFIX = ".json";
+
+    @Value("${infun.rooms.archive-dir:archive}")
+    private String directory;
+
+    @Value("${infun.rooms.archive-retention-ms:2592000000}")
+    private long retention;
+
+    private final Gson gson = new Gson();
+    private final ConcurrentMap<String, ArchivedRoom> summaries = new ConcurrentHashMap<>();
+    private Path path;
+
+    public RoomArchiveService() {
+    }
+
+    /**
+     * Wires the service by hand, without Spring; {@link #init()} still has to be called.
+     */
+    public RoomArchiveService(String directory, long retention) {
+        this.directory = directory;
+        this.retention = retention;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        path = Paths.get(directory);
+        Files.createDirectories(path);
+        for (String roomId : storedRoomIds()) {
+            summary(roomId).ifPresent(summary -> summaries.put(roomId, summary));
+        }
+    }
+
+    @Override
+    public void archive(Room room) throws IOException {
+        final RoomArchive archive = RoomArchive.fromRoom(room);
+        final Path temporary = path.resolve(fileName(room.getId()) + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile());
+             Writer writer = new BufferedWriter(new OutputStreamWriter(file, StandardCharsets.UTF_8))) {
+            gson.toJson(archive, writer);
+            writer.flush();
+            file.getFD().sync();
+        }
+        Files.move(temporary, archivePath(room.getId()), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        summaries.put(room.getId(), ArchivedRoom.fromArchive(archive));
+    }
+
+    @Override
+    public Optional<RoomArchive> load(String roomId) throws IOException {
+        final Path archive = archivePath(roomId);
+        if (!Files.exists(archive)) {
+            return Optional.empty();
+        }
+        try (Reader reader = Files.newBufferedReader(archive, StandardCharsets.UTF_8)) {
+            return Optional.ofNullable(gson.fromJson(reader, RoomArchive.class));
+        } catch (JsonParseException e) {
+            throw new IOException("Uszkodzone archiwum pokoju " + roomId, e);
+        }
+    }
+
+    @Override
+    public void delete(String roomId) throws IOException {
+        Files.deleteIfExists(archivePath(roomId));
+        summaries.remove(roomId);
+    }
+
+    @Override
+    public boolean contains(String roomId) {
+        return summaries.containsKey(roomId);
+    }
+
+    @Override
+    public List<String> archivedRoomIds() {
+        return new ArrayList<>(summaries.keySet());
+    }
+
+    @Override
+    public List<ArchivedRoom> list() {
+        return summaries.values().stream()
+                .sorted(Comparator.comparingLong(ArchivedRoom::getArchivedAt).reversed())
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<String> expired(long now) {
+        if (retention <= 0) {
+            return Collections.emptyList();
+        }
+        return summaries.values().stream()
+                .filter(summary -> now - summary.getArchivedAt() > retention)
+                .map(ArchivedRoom::getId)
+                .collect(Collectors.toList());
+    }
+
+    private List<String> storedRoomIds() {
+        final List<String> ids = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(path, "*" + SUFFIX)) {
+            for (Path file : files) {
+                final String name = file.getFileName().toString();
+                ids.add(URLDecoder.decode(name.substring(0, name.length() - SUFFIX.length()), StandardCharsets.UTF_8.name()));
+            }
+        } catch (IOException e) {
+            Events.error("archive.list-failed", e, "dir", path.toAbsolutePath());
+        }
+        return ids;
+    }
+
+    private Optional<ArchivedRoom> summary(String roomId) {
+        try {
+            return load(roomId).map(ArchivedRoom::fromArchive);
+        } catch (IOException e) {
+            Events.error("archive.unreadable", e, "room", roomId);
+            return Optional.empty();
+        }
+    }
+
+    private Path archivePath(String roomId) {
+        return path.resolve(fileName(roomId) + SUFFIX);
+    }
+
+    // room ids are user input, keep them from escaping the directory
+    private static String fileName(String roomId) {
+        try {
+            return URLEncoder.encode(roomId, StandardCharsets.UTF_8.name()).replace("*", "%2A");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package pl.edu.agh.toik.infun.services;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pl.edu.agh.toik.infun.logging.Events;
+import pl.edu.agh.toik.infun.model.Room;
+import pl.edu.agh.toik.infun.utils.TimingWheel;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Each room id sits in a {@link TimingWheel} at the time the room would become idle. Activity only
+ * updates the room's timestamp, so when an id comes up the room is looked up and checked again: rooms
+ * that saw activity go back into the wheel, idle ones are archived and dropped by
+ * {@link IRoomService#evictIdleRoom}, and ids of rooms removed in the meantime are dropped. The wheel
+ * holds ids rather than rooms, so a removed room isn't kept in memory until its turn comes.
+ * The wheel is only touched by the eviction thread, new rooms are handed over through a queue.
+ * The same thread deletes archives past their retention every {@code infun.rooms.archive-sweep-ms}.
+ */
+@Service
+public class RoomLifecycleService implements IRoomLifecycleService {
+    @Autowired
+    private IRoomService roomService;
+
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    @Value("${infun.rooms.idle-timeout-ms:7200000}")
+    private long idleTimeout;
+
+    @Value("${infun.rooms.eviction-tick-ms:1000}")
+    private long tick;
+
+    @Value("${infun.rooms.eviction-retry-ms:60000}")
+    private long retryDelay;
+
+    @Value("${infun.rooms.archive-sweep-ms:3600000}")
+    private long archiveSweep;
+
+    private final Queue<String> tracked = new ConcurrentLinkedQueue<>();
+    private TimingWheel<String> wheel;
+    // ids in the wheel, a room recreated under the same id is scheduled once
+    private final Set<String> scheduled = new HashSet<>();
+    private Meter evictions;
+    private ScheduledExecutorService evictor;
+
+    @PostConstruct
+    public void init() {
+        if (idleTimeout <= 0 && archiveSweep <= 0) {
+            return;
+        }
+        evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "room-eviction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (archiveSweep > 0) {
+            evictor.scheduleWithFixedDelay(this::expireArchives, 0, archiveSweep, TimeUnit.MILLISECONDS);
+        }
+        if (idleTimeout <= 0) {
+            return;
+        }
+        evictions = metricRegistry.meter(MetricRegistry.name(RoomLifecycleService.class, "evictions"));
+        // 64 ticks per level, four levels reach 64^4 ticks (194 days with one second ticks)
+        wheel = new TimingWheel<>(tick, 64, 4, System.currentTimeMillis());
+        evictor.scheduleWithFixedDelay(this::advance, tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (evictor != null) {
+            evictor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void track(Room room) {
+        if (idleTimeout > 0) {
+            tracked.add(room.getId());
+        }
+    }
+
+    private void advance() {
+        try {
+            evictIdleRooms();
+        } catch (RuntimeException e) {
+            // an exception would cancel the schedule
+            Events.error("rooms.eviction-failed", e);
+        }
+    }
+
+    private void expireArchives() {
+        try {
+            roomService.expireArchivedRooms(System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            Events.error("rooms.archive-expiry-failed", e);
+        }
+    }
+
+    private void evictIdleRooms() {
+        final long now = System.currentTimeMillis();
+        for (String roomId; (roomId = tracked.poll()) != null; ) {
+            if (scheduled.add(roomId)) {
+                wheel.schedule(roomId, roomService.getRoomById(roomId).map(Room::getLastActivity).orElse(now) + idleTimeout);
+            }
+        }
+        for (String roomId : wheel.advance(now)) {
+            final Room room = roomService.getRoomById(roomId).orElse(null);
+            if (room == null) {
+                scheduled.remove(roomId);
+                continue;
+            }
+            if (roomService.evictIdleRoom(room, idleTimeout)) {
+                scheduled.remove(roomId);
+                evictions.mark();
+                continue;
+            }
+            final long idleAt = room.getLastActivity() + idleTimeout;
+            // still idle means archiving failed, try again later
+            wheel.schedule(roomId, idleAt > now ? idleAt : now + retryDelay);
+        }
+    }
+}
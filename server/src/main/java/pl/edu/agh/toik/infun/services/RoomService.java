@@ -1,172 +1,399 @@
 package pl.edu.agh.toik.infun.services;
 
-import com.google.gson.Gson;
-import org.apache.commons.text.CharacterPredicates;
-import org.apache.commons.text.RandomStringGenerator;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import pl.edu.agh.toik.infun.exceptions.*;
+import pl.edu.agh.toik.infun.logging.Events;
 import pl.edu.agh.toik.infun.model.ConfigDTO;
 import pl.edu.agh.toik.infun.model.Room;
+import pl.edu.agh.toik.infun.model.TaskConfigResponse;
 import pl.edu.agh.toik.infun.model.User;
+import pl.edu.agh.toik.infun.model.domain.QueuedResult;
 import pl.edu.agh.toik.infun.model.domain.UserResult;
 import pl.edu.agh.toik.infun.model.requests.LastResultResponse;
 import pl.edu.agh.toik.infun.model.requests.TaskConfig;
+import pl.edu.agh.toik.infun.utils.RoomIdAllocator;
 
+import javax.annotation.PostConstruct;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Service
 public class RoomService implements IRoomService {
-    private List<Room> rooms;
-    private Map<String, TaskConfig> mapTaskNameConfig;
+    @Autowired
+    private ILeaderboardStreamService leaderboardStreamService;
+
+    @Autowired
+    private IFolderScanService folderScanService;
+
+    @Autowired
+    private IJournalService journalService;
+
+    @Autowired
+    private IClusterService clusterService;
+
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    @Autowired
+    private IRoomArchiveService roomArchiveService;
+
+    @Autowired
+    private IRoomLifecycleService roomLifecycleService;
+
+    @Value("${infun.rooms.id-alphabet:ABCDEFGHIJKLMNOPQRSTUVWXYZ}")
+    private String idAlphabet;
+
+    @Value("${infun.rooms.id-length:4}")
+    private int idLength;
+
+    private RoomIdAllocator roomIds;
+    private Map<String, Room> rooms;
+    private Map<String, Room> roomsByCookie;
+    private Timer roomLookups;
+    private Timer cookieLookups;
+    private Timer creatorScans;
+    private final Object archiveLock = new Object();
 
     public RoomService() {
-        this.rooms = Collections.synchronizedList(new ArrayList<Room>());
-        this.mapTaskNameConfig = new ConcurrentHashMap<>();
+        this.rooms = new ConcurrentHashMap<>();
+        this.roomsByCookie = new ConcurrentHashMap<>();
     }
 
-    @Override
-    public List<TaskConfig> createDefaultTasksConfig(List<String> jsons) {
-        Gson gson = new Gson();
-        List<TaskConfig> taskConfigList = jsons.stream().map(j -> gson.fromJson(j, TaskConfig.class)).collect(Collectors.toList());
-        taskConfigList.forEach(tc -> mapTaskNameConfig.putIfAbsent(tc.getName(), tc));
-
-        return taskConfigList;
+    /**
+     * Wires the service by hand, without Spring, e.g. in benchmarks; {@link #init()} still has to be called.
+     */
+    public RoomService(ILeaderboardStreamService leaderboardStreamService, IFolderScanService folderScanService,
+                       IJournalService journalService, IClusterService clusterService, MetricRegistry metricRegistry,
+                       IRoomArchiveService roomArchiveService, IRoomLifecycleService roomLifecycleService,
+                       RoomIdAllocator roomIds) {
+        this();
+        this.leaderboardStreamService = leaderboardStreamService;
+        this.folderScanService = folderScanService;
+        this.journalService = journalService;
+        this.clusterService = clusterService;
+        this.metricRegistry = metricRegistry;
+        this.roomArchiveService = roomArchiveService;
+        this.roomLifecycleService = roomLifecycleService;
+        this.roomIds = roomIds;
     }
 
+    @PostConstruct
+    public void init() {
+        roomLookups = metricRegistry.timer(MetricRegistry.name(RoomService.class, "lookups", "room"));
+        cookieLookups = metricRegistry.timer(MetricRegistry.name(RoomService.class, "lookups", "cookie"));
+        creatorScans = metricRegistry.timer(MetricRegistry.name(RoomService.class, "lookups", "creator"));
+        metricRegistry.register(MetricRegistry.name(RoomService.class, "rooms"), (Gauge<Integer>) rooms::size);
+        metricRegistry.register(MetricRegistry.name(RoomService.class, "players"), (Gauge<Integer>) roomsByCookie::size);
+        // room ids are what it takes to join a room, so no metric is named after one
+        metricRegistry.register(MetricRegistry.name(RoomService.class, "rooms", "players", "max"),
+                (Gauge<Integer>) () -> rooms.values().stream().mapToInt(Room::getPlayerCount).max().orElse(0));
+        if (roomIds == null) {
+            roomIds = new RoomIdAllocator(idAlphabet, idLength);
+        }
+        metricRegistry.register(MetricRegistry.name(RoomService.class, "ids", "free"), (Gauge<Integer>) roomIds::getFree);
+        // archived rooms keep their ids, so they can always be restored
+        roomArchiveService.archivedRoomIds().forEach(roomIds::reserve);
+        for (Room room : journalService.recover()) {
+            room.rebuildScoreSketches();
+            rooms.put(room.getId(), room);
+            roomIds.reserve(room.getId());
+            room.getUserList().forEach(user -> roomsByCookie.put(user.getCookieValue(), room));
+            roomLifecycleService.track(room);
+        }
+        journalService.start(rooms);
+    }
 
     @Override
     public void addRoom(Room room) throws RoomAlreadyExistsException {
-        if (rooms.stream().filter(g -> g.getId().equals(room.getId())).count() > 0) {
-            throw new RoomAlreadyExistsException("Pokój z id = " + room.getId() + " już istnieje");
+        if (roomArchiveService.contains(room.getId())) {
+            throw new RoomAlreadyExistsException("Pokój z id = " + room.getId() + " jest w archiwum");
+        }
+        synchronized (room) {
+            if (rooms.putIfAbsent(room.getId(), room) != null) {
+                throw new RoomAlreadyExistsException("Pokój z id = " + room.getId() + " już istnieje");
+            }
+            roomIds.reserve(room.getId());
+            journalService.roomCreated(room);
         }
-        rooms.add(room);
+        roomLifecycleService.track(room);
+        Events.info("room.created", "room", room.getId(), "taskNumber", room.getTaskNumber(),
+                "taskSeed", room.getTaskSequence().getSeed(), "perPlayerTasks", room.isPerPlayerTasks());
     }
 
     @Override
     public void addUser(String name, int age, String roomId, String cookie) throws UserAlreadyExistsException, NoSuchRoomException {
-        if (rooms.stream().anyMatch(g -> g.getUserByCookie(cookie).isPresent())) {
-            throw new UserAlreadyExistsException("Użytkownik z ciasteczkiem " + cookie + " już istnieje");
-        }
-
-        Optional<Room> room = rooms.stream().filter(g -> g.getId().equals(roomId)).findFirst();
-        if (room.isPresent()) {
-            room.get().addUser(name, age, cookie);
-        } else {
+        Optional<Room> room = getRoomById(roomId);
+        if (!room.isPresent()) {
             throw new NoSuchRoomException(String.format("Pokój o id '%s' nie istnieje.", roomId));
         }
+        synchronized (room.get()) {
+            if (rooms.get(roomId) != room.get()) {
+                throw new NoSuchRoomException(String.format("Pokój o id '%s' nie istnieje.", roomId));
+            }
+            // claiming the cookie first makes it unique across rooms without a global lock
+            if (roomsByCookie.putIfAbsent(cookie, room.get()) != null) {
+                throw new UserAlreadyExistsException("Użytkownik z ciasteczkiem " + cookie + " już istnieje");
+            }
+            try {
+                journalService.userJoined(room.get(), room.get().addUser(name, age, cookie));
+            } catch (UserAlreadyExistsException | RuntimeException e) {
+                roomsByCookie.remove(cookie, room.get());
+                throw e;
+            }
+        }
+        leaderboardStreamService.roomChanged(room.get());
     }
 
     @Override
     public void removeUser(final String cookie) {
-        rooms.forEach(room -> room.removeUser(cookie));
+        final Room room = roomsByCookie.get(cookie);
+        if (room != null) {
+            synchronized (room) {
+                if (!roomsByCookie.remove(cookie, room)) {
+                    return;
+                }
+                room.removeUser(cookie);
+                journalService.userLeft(room, cookie);
+            }
+            leaderboardStreamService.roomChanged(room);
+        }
     }
 
     @Override
     public List<Room> getRoomsByCookie(final String cookie) {
-        return rooms.stream()
-                .filter(room -> room.getUserByCookie(cookie).isPresent())
-                .collect(Collectors.toList());
+        return getRoomByCookie(cookie)
+                .map(Collections::singletonList)
+                .orElse(Collections.emptyList());
     }
 
     @Override
     public ConfigDTO getConfig(String task, String cookie) throws NoUserCookieFoundException {
         ConfigDTO configDTO = new ConfigDTO();
-        for (Room room : rooms) {
-            Optional<User> user = room.getUserByCookie(cookie);
-            if (user.isPresent()) {
-                configDTO.setRoom(room.getId());
-                configDTO.setNick(user.get().getNick());
-                configDTO.setAge(user.get().getAge());
-                try {
-                    configDTO.setConfig(room.getTasksConfig().stream().filter(t -> t.getName().equals(task)).findFirst().get().getConfig());
-                } catch (Exception e) {
-                    configDTO.setConfig(new ArrayList<>());
-                }
-                return configDTO;
-            }
+        Optional<Room> room = getRoomByCookie(cookie);
+        Optional<User> user = room.flatMap(r -> r.getUserByCookie(cookie));
+        if (!user.isPresent()) {
+            throw new NoUserCookieFoundException();
         }
-        throw new NoUserCookieFoundException();
+        configDTO.setRoom(room.get().getId());
+        configDTO.setNick(user.get().getNick());
+        configDTO.setAge(user.get().getAge());
+        configDTO.setConfig(room.get().getTasksConfig().stream()
+                .filter(t -> t.getName().equals(task))
+                .findFirst()
+                .map(TaskConfig::getConfig)
+                .orElseGet(ArrayList::new));
+        return configDTO;
     }
 
     @Override
-    public String getNextTask(String cookie) throws NoMoreAvailableTasksException, NoUserCookieFoundException {
-        Optional<Room> roomOptional = rooms.stream().filter(g -> g.getUserByCookie(cookie).isPresent()).findFirst();
-        if (!roomOptional.isPresent()) {
-            throw new NoUserCookieFoundException();
-        }
-
-        Room room = roomOptional.get();
-        Optional<User> userOptional = room.getUserByCookie(cookie);
-        if (!userOptional.isPresent()) {
+    public TaskConfigResponse getConfigResponse(String task, String cookie) throws NoUserCookieFoundException {
+        Optional<Room> room = getRoomByCookie(cookie);
+        Optional<User> user = room.flatMap(r -> r.getUserByCookie(cookie));
+        if (!user.isPresent()) {
             throw new NoUserCookieFoundException();
         }
+        return room.get().getConfigResponse(task, user.get());
+    }
 
-        User user = userOptional.get();
-        return user.getNextTask();
+    @Override
+    public String getNextTask(String cookie) throws NoMoreAvailableTasksException, NoUserCookieFoundException {
+        final Room room = getRoomByCookie(cookie).orElseThrow(NoUserCookieFoundException::new);
+        return room.nextTask(cookie);
     }
 
     @Override
     public boolean isCreator(String roomId, String cookie) {
-        return rooms
-                .stream()
-                .filter(g -> g.getId().equals(roomId))
-                .findFirst()
+        return getRoomById(roomId)
                 .map(g -> g.getCreatorCookie().equals(cookie))
                 .orElse(false);
     }
 
     public List<String> roomIdsCreatedBy(final String cookie) {
-        return rooms.stream()
-                .filter(room -> room.getCreatorCookie().equals(cookie))
-                .map(Room::getId)
-                .collect(Collectors.toList());
+        final Timer.Context context = creatorScans.time();
+        try {
+            return rooms.values().stream()
+                    .filter(room -> room.getCreatorCookie().equals(cookie))
+                    .map(Room::getId)
+                    .collect(Collectors.toList());
+        } finally {
+            context.stop();
+        }
+    }
+
+    @Override
+    public List<String> roomIdsReadableBy(String cookie, List<String> roomIds) throws NoSuchRoomException, AccessDeniedException {
+        if (roomIds == null || roomIds.isEmpty()) {
+            return roomIdsCreatedBy(cookie);
+        }
+        for (String roomId : roomIds) {
+            Room room = getRoomById(roomId)
+                    .orElseThrow(() -> new NoSuchRoomException("Nie ma pokoju z id = " + roomId));
+            if (!room.getCreatorCookie().equals(cookie)) {
+                throw new AccessDeniedException("Nie można pobrać wyników ze względu na niewłaściwe ciasteczko");
+            }
+        }
+        return roomIds;
     }
 
     @Override
     public void removeRoom(String roomId, String cookie) throws CannotRemoveRoomException {
-        Optional<Room> room = rooms.stream().filter(g -> g.getId().equals(roomId) && g.getCreatorCookie().equals(cookie)).findAny();
-        if (room.isPresent() && room.get().getCreatorCookie().equals(cookie)) {
-            rooms.remove(room.get());
-        } else {
+        Optional<Room> room = getRoomById(roomId);
+        if (!room.isPresent() || !room.get().getCreatorCookie().equals(cookie)) {
             throw new CannotRemoveRoomException("Nie można usunąć pokoju o id = " + roomId);
         }
+        synchronized (room.get()) {
+            if (!rooms.remove(roomId, room.get())) {
+                throw new CannotRemoveRoomException("Nie można usunąć pokoju o id = " + roomId);
+            }
+            room.get().getUserList().forEach(user -> roomsByCookie.remove(user.getCookieValue(), room.get()));
+            roomIds.release(roomId);
+            journalService.roomRemoved(room.get());
+        }
+        leaderboardStreamService.roomRemoved(room.get());
+    }
+
+    @Override
+    public boolean evictIdleRoom(Room room, long idleTimeout) {
+        final long idle;
+        synchronized (room) {
+            idle = System.currentTimeMillis() - room.getLastActivity();
+            if (rooms.get(room.getId()) != room || idle < idleTimeout) {
+                return false;
+            }
+            try {
+                roomArchiveService.archive(room);
+            } catch (IOException e) {
+                Events.error("room.archive-failed", e, "room", room.getId());
+                return false;
+            }
+            rooms.remove(room.getId(), room);
+            room.getUserList().forEach(user -> roomsByCookie.remove(user.getCookieValue(), room));
+            journalService.roomRemoved(room);
+        }
+        leaderboardStreamService.roomRemoved(room);
+        Events.info("room.evicted", "room", room.getId(), "players", room.getPlayerCount(), "idleMs", idle);
+        return true;
+    }
+
+    @Override
+    public void restoreRoom(String roomId, String cookie) throws NoSuchRoomException, RoomAlreadyExistsException {
+        // an archive can't expire while it's being restored
+        synchronized (archiveLock) {
+            restoreArchivedRoom(roomId, cookie);
+        }
+    }
+
+    private void restoreArchivedRoom(String roomId, String cookie) throws NoSuchRoomException, RoomAlreadyExistsException {
+        final Room room;
+        try {
+            room = roomArchiveService.load(roomId)
+                    .orElseThrow(() -> new NoSuchRoomException("Nie ma w archiwum pokoju z id = " + roomId))
+                    .toRoom(cookie);
+        } catch (IOException e) {
+            throw new NoSuchRoomException("Nie można odczytać archiwum pokoju z id = " + roomId, e);
+        }
+        synchronized (room) {
+            if (rooms.putIfAbsent(roomId, room) != null) {
+                throw new RoomAlreadyExistsException("Pokój z id = " + roomId + " już istnieje");
+            }
+            roomIds.reserve(roomId);
+            journalService.roomCreated(room);
+            for (User user : room.getUserList()) {
+                // players who joined another room since keep playing there
+                roomsByCookie.putIfAbsent(user.getCookieValue(), room);
+                journalService.userJoined(room, user);
+                journalService.resultApplied(room, user);
+                journalService.taskResultsRestored(room, user);
+            }
+            try {
+                roomArchiveService.delete(roomId);
+            } catch (IOException e) {
+                Events.error("room.archive-delete-failed", e, "room", roomId);
+            }
+        }
+        roomLifecycleService.track(room);
+        Events.info("room.restored", "room", roomId, "players", room.getPlayerCount());
+    }
+
+    @Override
+    public int expireArchivedRooms(long now) {
+        int expired = 0;
+        for (String roomId : roomArchiveService.expired(now)) {
+            synchronized (archiveLock) {
+                try {
+                    roomArchiveService.delete(roomId);
+                } catch (IOException e) {
+                    Events.error("room.archive-delete-failed", e, "room", roomId);
+                    continue;
+                }
+                if (!rooms.containsKey(roomId)) {
+                    roomIds.release(roomId);
+                }
+            }
+            expired++;
+            Events.info("room.archive-expired", "room", roomId);
+        }
+        return expired;
     }
 
     @Override
     public void addResult(String taskName, String cookie, String nick, String roomId, double result) throws NoSuchRoomException, NoUserCookieFoundException {
-        final Optional<Room> room = this.getRoomById(roomId);
-        if (!room.isPresent()) {
-            throw new NoSuchRoomException("Nie ma pokoju o id = " + roomId);
+        final Room room = getRoomById(roomId)
+                .orElseThrow(() -> new NoSuchRoomException("Nie ma pokoju o id = " + roomId));
+        synchronized (room) {
+            room.addResult(cookie, nick, result, taskName).ifPresent(user -> journalService.resultApplied(room, user));
         }
+        leaderboardStreamService.roomChanged(room);
+    }
 
-        Optional<User> user = room.get().getUserList().stream().filter(u -> u.getNick().equals(nick) && u.getCookieValue().equals(cookie)).findFirst();
-        if (!user.isPresent()) {
+    @Override
+    public void checkResultOwner(String cookie, String nick, String roomId) throws NoSuchRoomException, NoUserCookieFoundException {
+        final Room room = getRoomById(roomId)
+                .orElseThrow(() -> new NoSuchRoomException("Nie ma pokoju o id = " + roomId));
+        if (!room.getUserByCookie(cookie).filter(u -> u.getNick().equals(nick)).isPresent()) {
             throw new NoUserCookieFoundException();
         }
+    }
 
-        user.get().addUserResult(result, taskName);
+    @Override
+    public void addResults(String roomId, List<QueuedResult> results) throws NoSuchRoomException {
+        final Room room = getRoomById(roomId)
+                .orElseThrow(() -> new NoSuchRoomException("Nie ma pokoju o id = " + roomId));
+        synchronized (room) {
+            room.addResults(results).forEach(user -> journalService.resultApplied(room, user));
+        }
+        leaderboardStreamService.roomChanged(room);
     }
 
     @Override
     public Optional<Room> getRoomById(String roomId) {
-        return rooms.stream()
-                .filter(g -> g.getId().equals(roomId))
-                .findFirst();
+        final Timer.Context context = roomLookups.time();
+        try {
+            return Optional.ofNullable(rooms.get(roomId));
+        } finally {
+            context.stop();
+        }
     }
 
     @Override
-    public List<UserResult> getResults(String roomId, String cookie) throws NoSuchRoomException, AccessDeniedException {
+    public List<UserResult> getResults(String roomId, String cookie, int offset, int limit) throws NoSuchRoomException, AccessDeniedException {
         Optional<Room> roomOptional = this.getRoomById(roomId);
         if (!roomOptional.isPresent())
             throw new NoSuchRoomException("Nie ma pokoju z id = " + roomId);
         Room room = roomOptional.get();
         if (!room.getCreatorCookie().equals(cookie))
             throw new AccessDeniedException("Nie można pobrać wyników ze względu na niewłaściwe ciasteczko");
-        return room.getUserList()
+        room.touch();
+        return room.getLeaderboard()
+                .page(offset, limit)
                 .stream()
-                .sorted(Comparator.comparingDouble(User::getScore))
                 .map(UserResult::fromUser)
                 .collect(Collectors.toList());
         //return room.getUserList().stream().collect(Collectors.groupingBy(User::getNick, Collectors.summingDouble(User::getScore)));
@@ -174,20 +401,12 @@ public class RoomService implements IRoomService {
 
     @Override
     public String generateRandomRoomId() {
-        RandomStringGenerator randomStringGenerator = new RandomStringGenerator.Builder()
-                .withinRange('0', 'z')
-                .filteredBy(CharacterPredicates.ASCII_UPPERCASE_LETTERS)
-                .build();
-        String roomId;
-        do {
-            roomId = randomStringGenerator.generate(4);
-        } while (containsRoomId(roomId));
-        return roomId;
+        return roomIds.allocate(clusterService::isLocal);
     }
 
     @Override
     public LastResultResponse getLastResults(String cookie) {
-        Optional<Room> roomOptional = rooms.stream().filter(g -> g.getUserByCookie(cookie).isPresent()).findFirst();
+        Optional<Room> roomOptional = getRoomByCookie(cookie);
         if (roomOptional.isPresent()) {
             Room room = roomOptional.get();
             Optional<User> userOptional = room.getUserByCookie(cookie);
@@ -196,11 +415,7 @@ public class RoomService implements IRoomService {
                 LastResultResponse lastResultResponse = new LastResultResponse();
                 lastResultResponse.setLastResult(user.getLastResult());
                 lastResultResponse.setScore(user.getScore());
-                lastResultResponse.setRank(1 + room.getUserList()
-                        .stream()
-                        .map(User::getScore)
-                        .filter(s -> s > user.getScore())
-                        .count());
+                lastResultResponse.setRank(room.getLeaderboard().rankOf(user));
                 lastResultResponse.setColor(user.getColor());
                 return lastResultResponse;
             }
@@ -211,25 +426,27 @@ public class RoomService implements IRoomService {
 
     @Override
     public TaskConfig getTaskConfig(String taskName) {
-        return mapTaskNameConfig.getOrDefault(taskName, new TaskConfig(taskName, new ArrayList<>()));
+        return folderScanService.getTaskConfig(taskName).orElse(new TaskConfig(taskName, new ArrayList<>()));
     }
 
     @Override
     public void checkUserCurrentTask(String task, String cookie) throws WrongTaskException {
-        for (Room room : rooms) {
-            for (User user : room.getUserList()) {
-                if (user.getCookieValue().equals(cookie)) {
-                    if (!user.getCurrentTask().equals(task)) {
-                        throw new WrongTaskException("Zła gra: " + task);
-                    }
-                    return;
-                }
-            }
+        Optional<User> user = getUserByCookie(cookie);
+        if (user.isPresent() && !user.get().getCurrentTask().equals(task)) {
+            throw new WrongTaskException("Zła gra: " + task);
         }
     }
 
+    private Optional<Room> getRoomByCookie(String cookie) {
+        final Timer.Context context = cookieLookups.time();
+        try {
+            return Optional.ofNullable(roomsByCookie.get(cookie));
+        } finally {
+            context.stop();
+        }
+    }
 
-    private boolean containsRoomId(String roomId) {
-        return rooms.stream().anyMatch(g -> g.getId().equals(roomId));
+    private Optional<User> getUserByCookie(String cookie) {
+        return getRoomByCookie(cookie).flatMap(room -> room.getUserByCookie(cookie));
     }
 }
@@ -0,0 +1,108 @@
+package pl.edu.agh.toik.infun.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import pl.edu.agh.toik.infun.logging.Events;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.*;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves the address players reach the server at once, instead of on every redirect, and keeps
+ * it fresh by re-reading the network interfaces in the background (e.g. after the laptop joins
+ * the classroom Wi-Fi). {@code infun.routing.host} pins the host, {@code infun.routing.interface}
+ * picks the interface to take the address from.
+ */
+@Service
+public class RoutingService implements IRoutingService {
+    @Value("${infun.routing.host:}")
+    private String host;
+
+    @Value("${infun.routing.interface:}")
+    private String interfaceName;
+
+    @Value("${infun.routing.refresh-interval-ms:10000}")
+    private long refreshInterval;
+
+    @Value("${server.port}")
+    private int httpsPort;
+
+    private volatile String advertisedHost;
+    private ScheduledExecutorService refresher;
+
+    @PostConstruct
+    public void init() {
+        refresh();
+        if (StringUtils.hasText(host)) {
+            return;
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "routing-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(this::refresh, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    @Override
+    public String getAdvertisedHost() {
+        return advertisedHost;
+    }
+
+    @Override
+    public String externalUrl(String path) {
+        String urlHost = advertisedHost.contains(":") ? "[" + advertisedHost + "]" : advertisedHost;
+        return String.format("https://%s:%d%s", urlHost, httpsPort, path);
+    }
+
+    private void refresh() {
+        String resolved = StringUtils.hasText(host) ? host.trim() : resolve();
+        if (!resolved.equals(advertisedHost)) {
+            Events.info("routing.host", "host", resolved, "previous", advertisedHost);
+            advertisedHost = resolved;
+        }
+    }
+
+    private String resolve() {
+        try {
+            Optional<InetAddress> address = Collections.list(NetworkInterface.getNetworkInterfaces()).stream()
+                    .filter(RoutingService::isUsable)
+                    .filter(networkInterface -> !StringUtils.hasText(interfaceName) || networkInterface.getName().equals(interfaceName))
+                    .flatMap(networkInterface -> Collections.list(networkInterface.getInetAddresses()).stream())
+                    .filter(inetAddress -> !inetAddress.isLoopbackAddress() && !inetAddress.isLinkLocalAddress())
+                    // IPv4 first, site-local (classroom network) before public addresses
+                    .min(Comparator.comparing((InetAddress inetAddress) -> !(inetAddress instanceof Inet4Address))
+                            .thenComparing(inetAddress -> !inetAddress.isSiteLocalAddress()));
+            if (address.isPresent()) {
+                return address.get().getHostAddress();
+            }
+            return InetAddress.getLocalHost().getHostAddress();
+        } catch (SocketException | UnknownHostException e) {
+            Events.error("routing.resolve-failed", e, "interface", interfaceName);
+            return advertisedHost != null ? advertisedHost : "localhost";
+        }
+    }
+
+    private static boolean isUsable(NetworkInterface networkInterface) {
+        try {
+            return networkInterface.isUp() && !networkInterface.isLoopback() && !networkInterface.isVirtual();
+        } catch (SocketException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package pl.edu.agh.toik.infun.services;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import pl.edu.agh.toik.infun.model.Room;
+import pl.edu.agh.toik.infun.model.domain.AgeGroup;
+import pl.edu.agh.toik.infun.model.domain.ScoreDistribution;
+import pl.edu.agh.toik.infun.utils.ScoreSketch;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Rooms keep their sketches up to date as results come in, a query only merges them, which costs the
+ * number of buckets per room and task, not the number of players.
+ */
+@Service
+public class ScoreAnalyticsService implements IScoreAnalyticsService {
+    @Autowired
+    private IRoomService roomService;
+
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    private Timer merges;
+
+    @PostConstruct
+    public void init() {
+        merges = metricRegistry.timer(MetricRegistry.name(ScoreAnalyticsService.class, "merges"));
+    }
+
+    @Override
+    public List<ScoreDistribution> distributions(List<String> roomIds, String task, AgeGroup ageGroup, boolean byAge, List<Double> quantiles, int bins) {
+        final Timer.Context context = merges.time();
+        try {
+            // a room removed since the request started is skipped
+            final List<Room> rooms = roomIds.stream()
+                    .map(roomService::getRoomById)
+                    .filter(Optional::isPresent)
+                    .map(Optional::get)
+                    .collect(Collectors.toList());
+            final Set<String> tasks = task != null
+                    ? Collections.singleton(task)
+                    : rooms.stream().flatMap(room -> room.getTaskNames().stream()).collect(Collectors.toCollection(TreeSet::new));
+            final List<AgeGroup> groups = byAge && ageGroup == null
+                    ? Arrays.asList(AgeGroup.values())
+                    : Collections.singletonList(ageGroup);
+            final List<ScoreDistribution> distributions = new ArrayList<>();
+            for (String name : tasks) {
+                for (AgeGroup group : groups) {
+                    final ScoreSketch sketch = new ScoreSketch();
+                    rooms.forEach(room -> room.mergeScores(name, group, sketch));
+                    distributions.add(ScoreDistribution.fromSketch(name, group, rooms.size(), sketch, quantiles, bins));
+                }
+            }
+            return distributions;
+        } finally {
+            context.stop();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package pl.edu.agh.toik.infun.utils;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * Hands out random free room ids of a fixed length over an alphabet, tracking the used ones in a
+ * bitmap over the whole id space (26^4 ids take 56 KiB). A few random probes find a free id while
+ * the space is sparse, after that a scan from a random word finds the next free bit.
+ * Ids outside the space (custom ids of another length or alphabet) are not tracked.
+ */
+public class RoomIdAllocator {
+    private static final int RANDOM_PROBES = 32;
+
+    private final String alphabet;
+    private final int length;
+    private final int space;
+    private final long[] used;
+    private int free;
+
+    public RoomIdAllocator(String alphabet, int length) {
+        if (alphabet.length() < 2 || alphabet.chars().distinct().count() != alphabet.length() || length < 1) {
+            throw new IllegalArgumentException("Niepoprawny alfabet '" + alphabet + "' lub długość " + length + " identyfikatorów pokojów");
+        }
+        final double size = Math.pow(alphabet.length(), length);
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Za dużo możliwych identyfikatorów pokojów: " + alphabet.length() + "^" + length);
+        }
+        this.alphabet = alphabet;
+        this.length = length;
+        this.space = (int) size;
+        this.used = new long[(space + 63) / 64];
+        this.free = space;
+    }
+
+    /**
+     * Picks a free id accepted by the filter and marks it as used.
+     *
+     * @throws IllegalStateException when no free id is accepted
+     */
+    public synchronized String allocate(Predicate<String> filter) {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int probe = 0; probe < RANDOM_PROBES && free > 0; probe++) {
+            final int index = random.nextInt(space);
+            if (!isUsed(index) && filter.test(decode(index))) {
+                return take(index);
+            }
+        }
+        final int start = random.nextInt(used.length);
+        for (int i = 0; i < used.length && free > 0; i++) {
+            final int word = (start + i) % used.length;
+            long freeBits = ~used[word];
+            while (freeBits != 0) {
+                final int index = word * 64 + Long.numberOfTrailingZeros(freeBits);
+                if (index >= space) {
+                    break;
+                }
+                if (filter.test(decode(index))) {
+                    return take(index);
+                }
+                freeBits &= freeBits - 1;
+            }
+        }
+        throw new IllegalStateException("Brak wolnych identyfikatorów pokojów");
+    }
+
+    /**
+     * Marks an id chosen elsewhere (a custom or recovered room) as used.
+     */
+    public synchronized void reserve(String id) {
+        final int index = encode(id);
+        if (index >= 0 && !isUsed(index)) {
+            take(index);
+        }
+    }
+
+    public synchronized void release(String id) {
+        final int index = encode(id);
+        if (index >= 0 && isUsed(index)) {
+            used[index >>> 6] &= ~(1L << index);
+            free++;
+        }
+    }
+
+    public synchronized int getFree() {
+        return free;
+    }
+
+    private boolean isUsed(int index) {
+        return (used[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private String take(int index) {
+        used[index >>> 6] |= 1L << index;
+        free--;
+        return decode(index);
+    }
+
+    private String decode(int index) {
+        final char[] id = new char[length];
+        for (int i = length - 1; i >= 0; i--) {
+            id[i] = alphabet.charAt(index % alphabet.length());
+            index /= alphabet.length();
+        }
+        return new String(id);
+    }
+
+    // -1 for ids outside the space
+    private int encode(String id) {
+        if (id.length() != length) {
+            return -1;
+        }
+        int index = 0;
+        for (int i = 0; i < length; i++) {
+            final int digit = alphabet.indexOf(id.charAt(i));
+            if (digit < 0) {
+                return -1;
+            }
+            index = index * alphabet.length() + digit;
+        }
+        return index;
+    }
+}
@@ -0,0 +1,224 @@
+package pl.edu.agh.toik.infun.utils;
+
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A mergeable streaming sketch of a distribution of results with a relative error bound on quantiles
+ * (the DDSketch scheme). Values are counted in logarithmic buckets, bucket {@code i} holds the values in
+ * {@code (gamma^(i-1), gamma^i]} where {@code gamma = (1 + accuracy) / (1 - accuracy)}, negative values
+ * in a mirrored store and values near zero in a bucket of their own. Adding, removing and merging are only
+ * counter updates, so sketches of different rooms, tasks or age groups add up to the sketch of the union.
+ * With the default accuracy 1% results between 1 and a million take about 700 buckets.
+ *
+ * Not thread safe, see {@link pl.edu.agh.toik.infun.model.Room} for how it's guarded.
+ */
+public class ScoreSketch {
+    public static final double DEFAULT_ACCURACY = 0.01;
+
+    private static final double MIN_INDEXED = 1e-9;
+
+    private final double accuracy;
+    private final double gamma;
+    private final double logGamma;
+    private final Store positives = new Store();
+    private final Store negatives = new Store();
+    private long zeros;
+    private long count;
+    private double sum;
+
+    public ScoreSketch() {
+        this(DEFAULT_ACCURACY);
+    }
+
+    public ScoreSketch(double accuracy) {
+        if (!(accuracy > 0 && accuracy < 1)) {
+            throw new IllegalArgumentException("Niepoprawna dokładność szkicu: " + accuracy);
+        }
+        this.accuracy = accuracy;
+        this.gamma = (1 + accuracy) / (1 - accuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    public void add(double value) {
+        update(value, 1);
+    }
+
+    /**
+     * Takes back a value added before, e.g. the results of a player who left.
+     */
+    public void remove(double value) {
+        update(value, -1);
+    }
+
+    private void update(double value, int delta) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return;
+        }
+        if (value > MIN_INDEXED) {
+            positives.add(index(value), delta);
+        } else if (value < -MIN_INDEXED) {
+            negatives.add(index(-value), delta);
+        } else {
+            zeros += delta;
+        }
+        count += delta;
+        sum += delta * value;
+    }
+
+    public void merge(ScoreSketch other) {
+        if (other.accuracy != accuracy) {
+            throw new IllegalArgumentException("Nie można połączyć szkiców o dokładności " + accuracy + " i " + other.accuracy);
+        }
+        positives.merge(other.positives);
+        negatives.merge(other.negatives);
+        zeros += other.zeros;
+        count += other.count;
+        sum += other.sum;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getMean() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    public double getMin() {
+        return quantile(0);
+    }
+
+    public double getMax() {
+        return quantile(1);
+    }
+
+    /**
+     * @return a value within the relative accuracy of the q-quantile, NaN for an empty sketch
+     */
+    public double quantile(double q) {
+        if (count <= 0 || q < 0 || q > 1) {
+            return Double.NaN;
+        }
+        final long rank = (long) (q * (count - 1));
+        long seen = 0;
+        // ascending order: negatives from the largest magnitude, zeros, then positives
+        for (int i = negatives.counts.length - 1; i >= 0; i--) {
+            seen += negatives.counts[i];
+            if (seen > rank) {
+                return -value(negatives.offset + i);
+            }
+        }
+        seen += zeros;
+        if (seen > rank) {
+            return 0;
+        }
+        for (int i = 0; i < positives.counts.length; i++) {
+            seen += positives.counts[i];
+            if (seen > rank) {
+                return value(positives.offset + i);
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Splits the range between the minimum and the maximum into equal bins, every bucket of the sketch
+     * goes whole to the bin of its representative value.
+     */
+    public List<Bin> histogram(int bins) {
+        final List<Bin> histogram = new ArrayList<>();
+        if (count <= 0 || bins < 1) {
+            return histogram;
+        }
+        final double min = getMin();
+        final double max = getMax();
+        final double width = max > min ? (max - min) / bins : 0;
+        final long[] counts = new long[width > 0 ? bins : 1];
+        forEachBucket((value, bucketCount) -> counts[width > 0 ? Math.min(bins - 1, (int) ((value - min) / width)) : 0] += bucketCount);
+        for (int i = 0; i < counts.length; i++) {
+            histogram.add(new Bin(min + i * width, i == counts.length - 1 ? max : min + (i + 1) * width, counts[i]));
+        }
+        return histogram;
+    }
+
+    private interface BucketConsumer {
+        void accept(double value, long count);
+    }
+
+    private void forEachBucket(BucketConsumer consumer) {
+        for (int i = negatives.counts.length - 1; i >= 0; i--) {
+            if (negatives.counts[i] > 0) {
+                consumer.accept(-value(negatives.offset + i), negatives.counts[i]);
+            }
+        }
+        if (zeros > 0) {
+            consumer.accept(0, zeros);
+        }
+        for (int i = 0; i < positives.counts.length; i++) {
+            if (positives.counts[i] > 0) {
+                consumer.accept(value(positives.offset + i), positives.counts[i]);
+            }
+        }
+    }
+
+    private int index(double value) {
+        return (int) Math.ceil(Math.log(value) / logGamma);
+    }
+
+    // the value within the relative accuracy of every value of the bucket
+    private double value(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    @Value
+    public static class Bin {
+        private double lower;
+        private double upper;
+        private long count;
+    }
+
+    /**
+     * Bucket counters over a contiguous range of indexes, grown at either end as needed.
+     */
+    private static final class Store {
+        private long[] counts = new long[0];
+        private int offset;
+
+        void add(int index, long delta) {
+            if (counts.length == 0) {
+                counts = new long[16];
+                offset = index - counts.length / 2;
+            } else if (index < offset || index >= offset + counts.length) {
+                grow(index);
+            }
+            counts[index - offset] += delta;
+        }
+
+        void merge(Store other) {
+            for (int i = 0; i < other.counts.length; i++) {
+                if (other.counts[i] != 0) {
+                    add(other.offset + i, other.counts[i]);
+                }
+            }
+        }
+
+        private void grow(int index) {
+            final int low = Math.min(offset, index);
+            final int high = Math.max(offset + counts.length, index + 1);
+            // doubled so that a run of growing values doesn't copy on every new bucket
+            final int length = Math.max(high - low, counts.length * 2);
+            final int newOffset = index < offset ? high - length : low;
+            final long[] grown = new long[length];
+            System.arraycopy(counts, 0, grown, offset - newOffset, counts.length);
+            counts = grown;
+            offset = newOffset;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package pl.edu.agh.toik.infun.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel: level 0 has one bucket per tick, every next level one bucket per whole
+ * turn of the level below. Scheduling is O(1), and advancing the clock by a tick touches one
+ * bucket, plus the bucket of a higher level whose entries cascade down when its turn comes.
+ * Items fire at most one tick late and never early. Entries can't be cancelled, whoever handles an
+ * expired item checks whether it is still relevant (and reschedules it if needed).
+ */
+public class TimingWheel<T> {
+    private final long tick;
+    private final int size;
+    private final List<List<Entry<T>>[]> levels = new ArrayList<>();
+    // the next level 0 tick to process, counted in ticks since the epoch
+    private long current;
+
+    private static class Entry<T> {
+        private final T item;
+        private final long tick;
+
+        private Entry(T item, long tick) {
+            this.item = item;
+            this.tick = tick;
+        }
+    }
+
+    public TimingWheel(long tickMillis, int size, int levelCount, long nowMillis) {
+        if (tickMillis < 1 || size < 2 || levelCount < 1) {
+            throw new IllegalArgumentException("Niepoprawne parametry koła czasowego");
+        }
+        this.tick = tickMillis;
+        this.size = size;
+        for (int level = 0; level < levelCount; level++) {
+            @SuppressWarnings("unchecked")
+            List<Entry<T>>[] buckets = new List[size];
+            levels.add(buckets);
+        }
+        this.current = nowMillis / tickMillis;
+    }
+
+    public synchronized void schedule(T item, long expirationMillis) {
+        // rounded up, so an item never fires before its expiration
+        place(new Entry<>(item, Math.max(current, (expirationMillis + tick - 1) / tick)), null);
+    }
+
+    /**
+     * Moves the clock to now.
+     *
+     * @return items whose expiration has passed, in expiration order
+     */
+    public synchronized List<T> advance(long nowMillis) {
+        final List<T> expired = new ArrayList<>();
+        final long target = nowMillis / tick;
+        while (current <= target) {
+            // bring down the buckets of higher levels starting at this tick, the highest first
+            long span = pow(levels.size() - 1);
+            for (int level = levels.size() - 1; level > 0; level--, span /= size) {
+                if (current % span == 0) {
+                    final List<Entry<T>> cascading = take(level, (int) ((current / span) % size));
+                    for (Entry<T> entry : cascading) {
+                        place(entry, expired);
+                    }
+                }
+            }
+            for (Entry<T> entry : take(0, (int) (current % size))) {
+                expired.add(entry.item);
+            }
+            current++;
+        }
+        return expired;
+    }
+
+    private void place(Entry<T> entry, List<T> expired) {
+        if (entry.tick < current && expired != null) {
+            expired.add(entry.item);
+            return;
+        }
+        long span = 1;
+        for (int level = 0; level < levels.size(); level++, span *= size) {
+            if (entry.tick / span - current / span < size) {
+                add(level, (int) ((entry.tick / span) % size), entry);
+                return;
+            }
+        }
+        // beyond the last level: park it in the last bucket of the top level, it is placed again
+        // when that bucket cascades
+        final long topSpan = span / size;
+        add(levels.size() - 1, (int) ((current / topSpan + size - 1) % size), entry);
+    }
+
+    private void add(int level, int bucket, Entry<T> entry) {
+        final List<Entry<T>>[] buckets = levels.get(level);
+        if (buckets[bucket] == null) {
+            buckets[bucket] = new ArrayList<>();
+        }
+        buckets[bucket].add(entry);
+    }
+
+    private List<Entry<T>> take(int level, int bucket) {
+        final List<Entry<T>>[] buckets = levels.get(level);
+        final List<Entry<T>> entries = buckets[bucket];
+        buckets[bucket] = null;
+        return entries == null ? new ArrayList<>() : entries;
+    }
+
+    private long pow(int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= size;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,116 @@
+package pl.edu.agh.toik.infun.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Token buckets by key (a client address, a session, a room), refilled lazily on every take, so idle keys
+ * cost nothing but their entry. At most {@code maxKeys} keys are kept: when a new key finds the map full,
+ * buckets that have been idle long enough to be full again are dropped, which forgets nothing a full bucket
+ * would remember. That sweep runs at most once per refill time, until then new keys are refused, so a flood
+ * of new keys costs neither memory nor a scan per request.
+ */
+public class TokenBuckets {
+    private final double ratePerNano;
+    private final double burst;
+    private final int maxKeys;
+    private final long refillNanos;
+    private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private volatile long lastSweep;
+    private volatile boolean swept;
+
+    /**
+     * @param ratePerSecond tokens added per second
+     * @param burst         tokens a bucket holds when full
+     */
+    public TokenBuckets(double ratePerSecond, double burst, int maxKeys) {
+        if (!(ratePerSecond > 0) || burst < 1 || maxKeys < 1) {
+            throw new IllegalArgumentException("Niepoprawne parametry kubełków: " + ratePerSecond + "/s, " + burst + ", " + maxKeys);
+        }
+        this.ratePerNano = ratePerSecond / 1e9;
+        this.burst = burst;
+        this.maxKeys = maxKeys;
+        this.refillNanos = (long) Math.ceil(burst / ratePerNano);
+    }
+
+    /**
+     * @return true when the key had a token left, which is then taken, false also for a new key while
+     * there is no room for it
+     */
+    public boolean tryTake(String key, long nowNanos) {
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= maxKeys && !sweep(nowNanos)) {
+                return false;
+            }
+            // concurrent new keys may overshoot the limit by a few entries
+            bucket = buckets.computeIfAbsent(key, k -> new Bucket(burst, nowNanos));
+        }
+        return bucket.tryTake(nowNanos);
+    }
+
+    /**
+     * @return nanoseconds until the key has a token again, 0 when it has one now
+     */
+    public long nanosToToken(String key, long nowNanos) {
+        final Bucket bucket = buckets.get(key);
+        return bucket == null ? 0 : bucket.nanosToToken(nowNanos);
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    /**
+     * @return whether there is room for a new key now
+     */
+    private boolean sweep(long nowNanos) {
+        if ((!swept || nowNanos - lastSweep >= refillNanos) && sweeping.compareAndSet(false, true)) {
+            try {
+                buckets.values().removeIf(bucket -> bucket.idleSince(nowNanos) >= refillNanos);
+                lastSweep = nowNanos;
+                swept = true;
+            } finally {
+                sweeping.set(false);
+            }
+        }
+        return buckets.size() < maxKeys;
+    }
+
+    private final class Bucket {
+        private double tokens;
+        private long updated;
+
+        Bucket(double tokens, long nowNanos) {
+            this.tokens = tokens;
+            this.updated = nowNanos;
+        }
+
+        synchronized boolean tryTake(long nowNanos) {
+            refill(nowNanos);
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+
+        synchronized long nanosToToken(long nowNanos) {
+            refill(nowNanos);
+            return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / ratePerNano);
+        }
+
+        synchronized long idleSince(long nowNanos) {
+            return nowNanos - updated;
+        }
+
+        private void refill(long nowNanos) {
+            if (nowNanos > updated) {
+                tokens = Math.min(burst, tokens + (nowNanos - updated) * ratePerNano);
+                updated = nowNanos;
+            }
+        }
+    }
+}
@@ -27,8 +27,32 @@ function getResults(roomId) {
     return JSON.parse(xhr.responseText);
 
 }
-function prepareData(roomId) {
-     var results = getResults(roomId);
+function subscribeResults(roomId, onChange) {
+    var results = {};
+    var apply = function (event) {
+        var delta = JSON.parse(event.data);
+        for (var result of delta.updated) {
+            results[result.userName] = result;
+        }
+        for (var userName of delta.removed) {
+            delete results[userName];
+        }
+        onChange(Object.keys(results).map(function (key) {
+            return results[key];
+        }));
+    };
+    var source = new EventSource('/' + roomId + '/results/stream');
+    source.addEventListener('snapshot', function (event) {
+        results = {};
+        apply(event);
+    });
+    source.addEventListener('delta', apply);
+    source.addEventListener('removed', function () {
+        source.close();
+    });
+    return source;
+}
+function prepareData(results) {
     // var results = mockData();
 
     var array = [];
@@ -64,9 +88,9 @@ function prepareData(roomId) {
 }
 function getData() {
     var roomId = document.getElementById("roomID").innerHTML;
-    return prepareData(roomId);
+    return prepareData(getResults(roomId));
 }
-function createChart() {
+function createChart(dataPoints) {
     chart = new CanvasJS.Chart("chartContainer", {
 
         colorSet: "greenShades",
@@ -98,7 +122,7 @@ function createChart() {
             type: "bar",
             name: "users",
             axisYType: "secondary",
-            dataPoints: getData().top.reverse()
+            dataPoints: dataPoints
         }]
 
     });
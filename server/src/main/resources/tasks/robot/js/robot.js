@@ -1,5 +1,4 @@
-var age, nick, group, percentage, port, time
-port = 5000;
+var age, nick, group, percentage, time
 time = 10;
 percentage = 1;
 user_id_gen = Math.ceil(Math.random() * 1e8);
@@ -30,14 +29,10 @@ xhr.onreadystatechange = function() {
         var config = obj['config'];
         console.log(obj);
         config.forEach(parameter =>{
-            if(parameter.name === 'port')
-                port = parameter.value;
-            else if(parameter.name === 'ip' && parameter.value.trim() !== "")
-                ip = parameter.value;
-            else if(parameter.name === 'time')
+            // ip and port of the robot are used by the server, which relays the commands
+            if(parameter.name === 'time')
                 time = parameter.value;
         });
-        console.log(port);
     }
 }
 xhr.send(null);
@@ -66,7 +61,7 @@ intervalId = setInterval( function() {
         endFun();
         return;
     }
-    $.getJSON("http://" + ip + ":" + port + '/control_robot', {
+    $.getJSON('/robot/control', {
         direction: direction_now,
         mousedown: mousedown_now,
         user_id: user_id_gen,
@@ -0,0 +1,63 @@
+package pl.edu.agh.toik.infun.cluster;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConsistentHashRingTest {
+    private static final int KEYS = 10000;
+
+    @Test
+    public void keysPastTheLastPointWrapAroundToTheFirst() {
+        // a single point splits the hash space in two, the keys above it only find a node by wrapping around
+        final ConsistentHashRing<String> ring = new ConsistentHashRing<>(Collections.singletonList("a"), 1);
+
+        for (int key = 0; key < KEYS; key++) {
+            assertEquals("a", ring.get(roomId(key)));
+        }
+    }
+
+    @Test
+    public void emptyRingHasNoNode() {
+        assertNull(new ConsistentHashRing<String>(Collections.emptyList(), 100).get("ABCD"));
+    }
+
+    @Test
+    public void addingANodeOnlyMovesKeysToIt() {
+        final ConsistentHashRing<String> before = new ConsistentHashRing<>(Arrays.asList("a", "b", "c"), 100);
+        final ConsistentHashRing<String> after = new ConsistentHashRing<>(Arrays.asList("a", "b", "c", "d"), 100);
+
+        int moved = 0;
+        for (int key = 0; key < KEYS; key++) {
+            final String owner = after.get(roomId(key));
+            if (!owner.equals(before.get(roomId(key)))) {
+                assertEquals("d", owner);
+                moved++;
+            }
+        }
+        assertTrue("moved " + moved, moved > KEYS / 8 && moved < KEYS * 3 / 8);
+    }
+
+    @Test
+    public void virtualNodesEvenOutTheShares() {
+        final List<String> nodes = Arrays.asList("a", "b", "c", "d");
+        final ConsistentHashRing<String> ring = new ConsistentHashRing<>(nodes, 100);
+        final Map<String, Integer> shares = new HashMap<>();
+        for (int key = 0; key < KEYS; key++) {
+            shares.merge(ring.get(roomId(key)), 1, Integer::sum);
+        }
+
+        for (String node : nodes) {
+            final int share = shares.getOrDefault(node, 0);
+            assertTrue(node + " got " + share, share > KEYS / 8 && share < KEYS * 3 / 8);
+        }
+    }
+
+    private static String roomId(int key) {
+        return String.format("R%04d", key);
+    }
+}
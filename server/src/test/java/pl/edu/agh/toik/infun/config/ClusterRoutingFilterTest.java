@@ -0,0 +1,186 @@
+package pl.edu.agh.toik.infun.config;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.catalina.Context;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.tomcat.util.descriptor.web.FilterDef;
+import org.apache.tomcat.util.descriptor.web.FilterMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.util.StreamUtils;
+import pl.edu.agh.toik.infun.cluster.ClusterNode;
+import pl.edu.agh.toik.infun.cluster.ClusterProxy;
+import pl.edu.agh.toik.infun.services.IClusterService;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * The entry node runs on {@code localhost} and the owner of rooms starting with B on {@code 127.0.0.1},
+ * two hosts as far as the browser's cookies are concerned.
+ */
+public class ClusterRoutingFilterTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer owner;
+    private Tomcat entry;
+    private volatile String ownerRequest;
+    private volatile String ownerCookies;
+    private volatile String ownerBody;
+
+    @Before
+    public void setUp() throws Exception {
+        owner = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        owner.createContext("/", exchange -> {
+            ownerRequest = exchange.getRequestMethod() + " " + exchange.getRequestURI();
+            ownerCookies = exchange.getRequestHeaders().getFirst("Cookie");
+            ownerBody = StreamUtils.copyToString(exchange.getRequestBody(), StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Set-Cookie", "ROOM=B1; Path=/");
+            exchange.getResponseHeaders().add("Set-Cookie", "JSESSIONID=owner; Path=/");
+            final byte[] body = "owner".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        owner.start();
+        final ClusterNode ownerNode = new ClusterNode("127.0.0.1", 0, owner.getAddress().getPort());
+
+        entry = new Tomcat();
+        entry.setBaseDir(folder.getRoot().getAbsolutePath());
+        entry.setPort(0);
+        final Context context = entry.addContext("", folder.getRoot().getAbsolutePath());
+        Tomcat.addServlet(context, "local", new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                response.getWriter().write("local");
+            }
+        });
+        context.addServletMappingDecoded("/", "local");
+        final FilterDef filter = new FilterDef();
+        filter.setFilterName("routing");
+        filter.setFilter(new ClusterRoutingFilter(new IClusterService() {
+            @Override
+            public boolean isClustered() {
+                return true;
+            }
+
+            @Override
+            public boolean isLocal(String roomId) {
+                return !roomId.startsWith("B");
+            }
+
+            @Override
+            public ClusterNode ownerOf(String roomId) {
+                return isLocal(roomId) ? null : ownerNode;
+            }
+        }, null));
+        context.addFilterDef(filter);
+        final FilterMap mapping = new FilterMap();
+        mapping.setFilterName("routing");
+        mapping.addURLPattern("/*");
+        context.addFilterMap(mapping);
+        entry.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        entry.stop();
+        entry.destroy();
+        owner.stop(0);
+    }
+
+    @Test
+    public void roomOfAnotherNodeIsServedThroughTheEntryNode() throws IOException {
+        final HttpURLConnection connection = open("GET", "/B100/results?page=2", "COOKIE=player; JSESSIONID=entry");
+
+        assertEquals(200, connection.getResponseCode());
+        assertNull(connection.getHeaderField("Location"));
+        assertEquals("owner", body(connection));
+        assertEquals("GET /B100/results?page=2", ownerRequest);
+        // the owner sees the cookies the entry node gave out, the browser keeps the entry node's session
+        assertEquals("COOKIE=player; JSESSIONID=entry", ownerCookies);
+        assertEquals(Collections.singletonList("ROOM=B1; Path=/"), setCookies(connection));
+    }
+
+    @Test
+    public void joinFormIsForwardedWithItsParameters() throws IOException {
+        final HttpURLConnection connection = open("POST", "/room/join", "COOKIE=player");
+        connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write("roomId=B200&nick=ala&age=9".getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertEquals("owner", body(connection));
+        assertEquals("POST /room/join", ownerRequest);
+        assertTrue(ownerBody, ownerBody.contains("roomId=B200"));
+        assertTrue(ownerBody, ownerBody.contains("nick=ala"));
+        assertTrue(ownerBody, ownerBody.contains("age=9"));
+    }
+
+    @Test
+    public void playerRequestsFollowTheRoomCookie() throws IOException {
+        assertEquals("owner", body(open("GET", "/tasks/next", "COOKIE=player; ROOM=B100")));
+        assertEquals("local", body(open("GET", "/tasks/next", "COOKIE=player; ROOM=A100")));
+    }
+
+    @Test
+    public void staticTaskAssetsStayLocal() throws IOException {
+        assertEquals("local", body(open("GET", "/tasks/2048/js/game.js", "COOKIE=player; ROOM=B100")));
+        assertEquals("local", body(open("GET", "/tasks/jigsaw/img/img1.jpg?w=500", "COOKIE=player; ROOM=B100")));
+        assertNull(ownerRequest);
+    }
+
+    @Test
+    public void forwardedRequestIsNotRoutedAgain() throws IOException {
+        final HttpURLConnection connection = open("GET", "/B100/results", "COOKIE=player");
+        connection.setRequestProperty(ClusterProxy.FORWARDED_HEADER, "node-c");
+
+        assertEquals("local", body(connection));
+        assertNull(ownerRequest);
+    }
+
+    @Test
+    public void unreachableOwnerIsABadGateway() throws IOException {
+        owner.stop(0);
+
+        assertEquals(502, open("GET", "/B100/results", "COOKIE=player").getResponseCode());
+    }
+
+    private HttpURLConnection open(String method, String path, String cookies) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + entry.getConnector().getLocalPort() + path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setInstanceFollowRedirects(false);
+        connection.setRequestProperty("Cookie", cookies);
+        return connection;
+    }
+
+    // the JDK server sends Set-cookie
+    private static List<String> setCookies(HttpURLConnection connection) {
+        return connection.getHeaderFields().entrySet().stream()
+                .filter(header -> "Set-Cookie".equalsIgnoreCase(header.getKey()))
+                .flatMap(header -> header.getValue().stream())
+                .collect(Collectors.toList());
+    }
+
+    private static String body(HttpURLConnection connection) throws IOException {
+        return StreamUtils.copyToString(connection.getInputStream(), StandardCharsets.UTF_8);
+    }
+}
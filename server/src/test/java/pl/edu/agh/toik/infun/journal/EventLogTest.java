@@ -0,0 +1,89 @@
+package pl.edu.agh.toik.infun.journal;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class EventLogTest {
+    private static final int SEGMENT_SIZE = 4096;
+    // length and checksum in front of every record
+    private static final int HEADER = 8;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+
+    @Before
+    public void setUp() {
+        directory = folder.getRoot().toPath();
+    }
+
+    @Test
+    public void tornRecordEndsTheSegment() throws IOException {
+        final long torn = write("first", "second", "third").get(2);
+        try (FileChannel segment = FileChannel.open(segmentPath(0), StandardOpenOption.WRITE)) {
+            // cut inside the payload of the third record
+            segment.truncate((int) torn + HEADER + 2);
+        }
+
+        assertEquals(Arrays.asList("first", "second"), read());
+    }
+
+    @Test
+    public void corruptedRecordEndsTheSegment() throws IOException {
+        final long corrupted = write("first", "second", "third").get(1);
+        try (FileChannel segment = FileChannel.open(segmentPath(0), StandardOpenOption.WRITE)) {
+            segment.write(ByteBuffer.wrap(new byte[]{'X'}), (int) corrupted + HEADER);
+        }
+
+        assertEquals(Collections.singletonList("first"), read());
+    }
+
+    @Test
+    public void appendsAfterATornSegmentGoToANewOne() throws IOException {
+        final long torn = write("first", "second").get(1);
+        try (FileChannel segment = FileChannel.open(segmentPath(0), StandardOpenOption.WRITE)) {
+            segment.truncate((int) torn + 3);
+        }
+        write("third");
+
+        assertEquals(Arrays.asList("first", "third"), read());
+    }
+
+    private List<Long> write(String... records) throws IOException {
+        final List<Long> positions = new ArrayList<>();
+        try (EventLog log = new EventLog(directory, SEGMENT_SIZE)) {
+            for (String record : records) {
+                positions.add(log.append(record.getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+        return positions;
+    }
+
+    private List<String> read() throws IOException {
+        final List<String> records = new ArrayList<>();
+        try (EventLog log = new EventLog(directory, SEGMENT_SIZE)) {
+            log.read(0, (position, record) -> records.add(new String(record, StandardCharsets.UTF_8)));
+        }
+        return records;
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(String.format("%010d.log", segment));
+    }
+}
@@ -0,0 +1,103 @@
+package pl.edu.agh.toik.infun.model;
+
+import org.junit.Before;
+import org.junit.Test;
+import pl.edu.agh.toik.infun.exceptions.UserAlreadyExistsException;
+import pl.edu.agh.toik.infun.model.requests.ParameterConfig;
+import pl.edu.agh.toik.infun.model.requests.TaskConfig;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class LeaderboardTest {
+    private Room room;
+
+    @Before
+    public void setUp() {
+        room = new Room("TEST", Collections.singletonList(
+                new TaskConfig("2048", Collections.singletonList(new ParameterConfig("3", "level", false)))), "creator", 5);
+    }
+
+    @Test
+    public void ordersByScoreThenByJoiningOrder() throws UserAlreadyExistsException {
+        join("a", 10);
+        join("b", 5);
+        join("c", 10);
+        join("d", 7);
+        join("e", 5);
+
+        assertEquals(Arrays.asList("a", "c", "d", "b", "e"), nicks(room.getLeaderboard().top(10)));
+        assertEquals(Arrays.asList("c", "d"), nicks(room.getLeaderboard().page(1, 2)));
+        assertEquals(Collections.singletonList("e"), nicks(room.getLeaderboard().page(4, 5)));
+        assertEquals(Collections.emptyList(), nicks(room.getLeaderboard().page(5, 1)));
+        assertEquals(Arrays.asList("a", "c"), nicks(room.getLeaderboard().page(-1, 2)));
+    }
+
+    @Test
+    public void tiedPlayersShareARank() throws UserAlreadyExistsException {
+        join("a", 10);
+        final User b = join("b", 5);
+        final User c = join("c", 10);
+        join("d", 7);
+        join("e", 5);
+        final Leaderboard leaderboard = room.getLeaderboard();
+
+        assertEquals(1, leaderboard.rankOf(c));
+        assertEquals(4, leaderboard.rankOf(b));
+        assertEquals(1, leaderboard.rank(11));
+        assertEquals(3, leaderboard.rank(7));
+        assertEquals(4, leaderboard.rank(6));
+        assertEquals(6, leaderboard.rank(0));
+    }
+
+    @Test
+    public void followsScoreChangesAndLeavingPlayers() throws UserAlreadyExistsException {
+        join("a", 10);
+        join("b", 5);
+        join("c", 10);
+        room.restoreResult("b", 20, 15, 0);
+        room.removeUser("a");
+
+        assertEquals(Arrays.asList("b", "c"), nicks(room.getLeaderboard().top(10)));
+        assertEquals(2, room.getLeaderboard().size());
+    }
+
+    @Test
+    public void pagesMatchASortedRoomWithManyTies() throws UserAlreadyExistsException {
+        final Random random = new Random(13);
+        final List<User> users = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            users.add(join("gracz" + i, random.nextInt(10)));
+        }
+        for (int i = 0; i < 100; i++) {
+            final User user = users.get(random.nextInt(users.size()));
+            room.restoreResult(user.getCookieValue(), random.nextInt(10), 0, 0);
+        }
+        final List<User> sorted = users.stream()
+                .sorted(Comparator.comparingDouble(User::getScore).reversed().thenComparingInt(User::slot))
+                .collect(Collectors.toList());
+        final Leaderboard leaderboard = room.getLeaderboard();
+
+        assertEquals(sorted, leaderboard.top(users.size()));
+        for (int offset = 0; offset < users.size(); offset += 37) {
+            assertEquals(sorted.subList(offset, Math.min(offset + 25, sorted.size())), leaderboard.page(offset, 25));
+        }
+        for (User user : users) {
+            final long higher = users.stream().filter(other -> other.getScore() > user.getScore()).count();
+            assertEquals(higher + 1, leaderboard.rankOf(user));
+        }
+    }
+
+    // the nick doubles as the cookie
+    private User join(String nick, double score) throws UserAlreadyExistsException {
+        final User user = room.addUser(nick, 10, nick);
+        room.restoreResult(nick, score, score, 0);
+        return user;
+    }
+
+    private static List<String> nicks(List<User> users) {
+        return users.stream().map(User::getNick).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,85 @@
+package pl.edu.agh.toik.infun.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PlayerTableTest {
+    // "Aa" and "BB" have the same hash code, so these cookies share one probe chain of the index
+    private static final String[] COLLIDING = {"AaAa", "AaBB", "BBAa", "BBBB"};
+
+    private final PlayerTable table = new PlayerTable();
+
+    @Test
+    public void findsPlayersPastARemovedOneInTheProbeChain() {
+        final int[] slots = addAll(COLLIDING);
+
+        table.remove(slots[1]);
+
+        assertEquals(-1, table.find("AaBB"));
+        assertEquals(slots[0], table.find("AaAa"));
+        assertEquals(slots[2], table.find("BBAa"));
+        assertEquals(slots[3], table.find("BBBB"));
+        assertEquals(3, table.liveCount());
+    }
+
+    @Test
+    public void rejoiningPlayerGetsANewSlotAndTheOldOneKeepsItsValues() {
+        final int[] slots = addAll(COLLIDING);
+        table.setResult(slots[1], 12, 4, 3);
+        table.remove(slots[1]);
+
+        final int rejoined = table.add("nowy", 9, "#000000", "AaBB");
+
+        assertNotEquals(slots[1], rejoined);
+        assertEquals(rejoined, table.find("AaBB"));
+        assertEquals(0, table.score(rejoined), 0);
+        assertEquals(PlayerTable.NO_TASK, table.currentTask(rejoined));
+        assertEquals("gracz1", table.nick(slots[1]));
+        assertEquals(12, table.score(slots[1]), 0);
+        assertFalse(table.containsNick("gracz1"));
+        assertTrue(table.containsNick("nowy"));
+        assertArrayEquals(new int[]{slots[0], slots[2], slots[3], rejoined}, table.liveSlots());
+    }
+
+    @Test
+    public void growingKeepsLivePlayersFindableAndDropsRemovedOnes() {
+        final String[] cookies = new String[50];
+        for (int i = 0; i < cookies.length; i++) {
+            cookies[i] = i % 2 == 0 ? COLLIDING[i % COLLIDING.length] + i : "cookie" + i;
+        }
+        final int[] slots = addAll(cookies);
+        for (int i = 0; i < cookies.length; i += 3) {
+            table.remove(slots[i]);
+        }
+
+        for (int i = 0; i < cookies.length; i++) {
+            assertEquals(cookies[i], i % 3 == 0 ? -1 : slots[i], table.find(cookies[i]));
+        }
+        assertEquals(cookies.length - 17, table.liveCount());
+    }
+
+    @Test
+    public void taskResultsGrowWithCompletedTasks() {
+        final int slot = table.add("gracz", 10, "#000000", "cookie");
+        for (int position = 0; position < 10; position++) {
+            table.setTaskResult(slot, position, position + 0.5);
+        }
+
+        assertEquals(9.5, table.taskResult(slot, 9), 0);
+        assertEquals(0, table.taskResult(slot, 10), 0);
+        assertEquals(0, table.taskResult(slot, 1000), 0);
+    }
+
+    private int[] addAll(String... cookies) {
+        final int[] slots = new int[cookies.length];
+        for (int i = 0; i < cookies.length; i++) {
+            slots[i] = table.add("gracz" + i, 10, "#000000", cookies[i]);
+        }
+        return slots;
+    }
+}
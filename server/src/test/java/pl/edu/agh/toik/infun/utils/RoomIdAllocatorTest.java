@@ -0,0 +1,83 @@
+package pl.edu.agh.toik.infun.utils;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RoomIdAllocatorTest {
+    // 2^3 = 8 ids
+    private final RoomIdAllocator allocator = new RoomIdAllocator("AB", 3);
+
+    @Test
+    public void handsOutEveryIdOnceThenRefuses() {
+        final Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 8; i++) {
+            final String id = allocator.allocate(candidate -> true);
+            assertTrue(id.matches("[AB]{3}"));
+            assertTrue("duplicate " + id, ids.add(id));
+        }
+        assertEquals(0, allocator.getFree());
+        assertExhausted();
+    }
+
+    @Test
+    public void releasedIdIsHandedOutAgain() {
+        for (int i = 0; i < 8; i++) {
+            allocator.allocate(candidate -> true);
+        }
+        allocator.release("BAB");
+        allocator.release("BAB");
+
+        assertEquals(1, allocator.getFree());
+        assertEquals("BAB", allocator.allocate(candidate -> true));
+        assertExhausted();
+    }
+
+    @Test
+    public void reservedIdsAreNotHandedOut() {
+        allocator.reserve("AAA");
+        allocator.reserve("AAA");
+        // outside the id space, not tracked
+        allocator.reserve("ABC");
+        allocator.reserve("ABAB");
+
+        assertEquals(7, allocator.getFree());
+        for (int i = 0; i < 7; i++) {
+            assertFalse(allocator.allocate(candidate -> true).equals("AAA"));
+        }
+        assertExhausted();
+    }
+
+    @Test
+    public void onlyIdsAcceptedByTheFilterAreHandedOut() {
+        for (int i = 0; i < 4; i++) {
+            assertTrue(allocator.allocate(candidate -> candidate.startsWith("B")).startsWith("B"));
+        }
+        try {
+            allocator.allocate(candidate -> candidate.startsWith("B"));
+            fail("all ids starting with B are used");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(4, allocator.getFree());
+        assertTrue(allocator.allocate(candidate -> true).startsWith("A"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void alphabetWithRepeatedLettersIsRejected() {
+        new RoomIdAllocator("ABA", 4);
+    }
+
+    private void assertExhausted() {
+        try {
+            allocator.allocate(candidate -> true);
+            fail("no free id expected");
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package pl.edu.agh.toik.infun.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ScoreSketchTest {
+    private static final double[] QUANTILES = {0, 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 1};
+
+    @Test
+    public void quantilesAreWithinTheRelativeAccuracy() {
+        final ScoreSketch sketch = new ScoreSketch();
+        final List<Double> values = values(new Random(3), 20000);
+        values.forEach(sketch::add);
+        Collections.sort(values);
+
+        for (double q : QUANTILES) {
+            final double exact = values.get((int) (q * (values.size() - 1)));
+            final double estimate = sketch.quantile(q);
+            // a hair over the accuracy for values right at a bucket boundary
+            assertTrue("q=" + q + " exact=" + exact + " estimate=" + estimate,
+                    Math.abs(estimate - exact) <= ScoreSketch.DEFAULT_ACCURACY * Math.abs(exact) * (1 + 1e-9));
+        }
+        assertEquals(values.size(), sketch.getCount());
+    }
+
+    @Test
+    public void removingValuesUndoesAddingThem() {
+        final Random random = new Random(5);
+        final List<Double> kept = values(random, 2000);
+        final List<Double> removed = values(random, 2000);
+        final ScoreSketch sketch = new ScoreSketch();
+        final ScoreSketch expected = new ScoreSketch();
+        kept.forEach(sketch::add);
+        removed.forEach(sketch::add);
+        removed.forEach(sketch::remove);
+        kept.forEach(expected::add);
+
+        assertSameDistribution(expected, sketch);
+    }
+
+    @Test
+    public void mergedSketchEqualsTheSketchOfTheUnionInEitherOrder() {
+        final Random random = new Random(11);
+        final List<Double> first = values(random, 3000);
+        final List<Double> second = values(random, 1000);
+        final ScoreSketch union = new ScoreSketch();
+        first.forEach(union::add);
+        second.forEach(union::add);
+
+        final ScoreSketch firstThenSecond = sketchOf(first);
+        firstThenSecond.merge(sketchOf(second));
+        final ScoreSketch secondThenFirst = sketchOf(second);
+        secondThenFirst.merge(sketchOf(first));
+
+        assertSameDistribution(union, firstThenSecond);
+        assertSameDistribution(union, secondThenFirst);
+    }
+
+    @Test
+    public void emptySketchHasNoQuantiles() {
+        final ScoreSketch sketch = new ScoreSketch();
+        sketch.add(5);
+        sketch.remove(5);
+
+        assertTrue(Double.isNaN(sketch.quantile(0.5)));
+        assertTrue(sketch.histogram(10).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sketchesOfDifferentAccuracyDoNotMerge() {
+        new ScoreSketch(0.01).merge(new ScoreSketch(0.02));
+    }
+
+    private static ScoreSketch sketchOf(List<Double> values) {
+        final ScoreSketch sketch = new ScoreSketch();
+        values.forEach(sketch::add);
+        return sketch;
+    }
+
+    // results spread over several orders of magnitude, with some zeros and negative ones
+    private static List<Double> values(Random random, int count) {
+        final List<Double> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final int kind = random.nextInt(10);
+            if (kind == 0) {
+                values.add(0.0);
+            } else if (kind == 1) {
+                values.add(-Math.exp(random.nextDouble() * 7));
+            } else {
+                values.add(Math.exp(random.nextDouble() * 14));
+            }
+        }
+        return values;
+    }
+
+    private static void assertSameDistribution(ScoreSketch expected, ScoreSketch actual) {
+        assertEquals(expected.getCount(), actual.getCount());
+        assertEquals(expected.getSum(), actual.getSum(), 1e-6 * Math.abs(expected.getSum()));
+        for (double q : QUANTILES) {
+            assertEquals("q=" + q, expected.quantile(q), actual.quantile(q), 0);
+        }
+        assertEquals(expected.histogram(10), actual.histogram(10));
+    }
+}
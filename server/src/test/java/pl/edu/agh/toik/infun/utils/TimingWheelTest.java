@@ -0,0 +1,87 @@
+package pl.edu.agh.toik.infun.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TimingWheelTest {
+    private static final long TICK = 10;
+
+    @Test
+    public void firesNeitherEarlyNorMoreThanATickLate() {
+        // 4 buckets on 3 levels cover 64 ticks, later items are parked and cascade down several times
+        final TimingWheel<Long> wheel = new TimingWheel<>(TICK, 4, 3, 0);
+        final Random random = new Random(42);
+        final int items = 1000;
+        for (int i = 0; i < items; i++) {
+            final long expiration = random.nextInt(3000);
+            wheel.schedule(expiration, expiration);
+        }
+        int fired = 0;
+        for (long now = 0; now <= 3000 + TICK; now++) {
+            for (long expiration : wheel.advance(now)) {
+                assertTrue("fired at " + now + " before " + expiration, now >= expiration);
+                assertTrue("fired at " + now + " long after " + expiration, now - expiration < TICK);
+                fired++;
+            }
+        }
+        assertEquals(items, fired);
+    }
+
+    @Test
+    public void advancingManyTicksAtOnceReturnsItemsInExpirationOrder() {
+        final TimingWheel<Long> wheel = new TimingWheel<>(TICK, 4, 2, 0);
+        final List<Long> expirations = new ArrayList<>();
+        final Random random = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            expirations.add((long) random.nextInt(2000));
+        }
+        expirations.forEach(expiration -> wheel.schedule(expiration, expiration));
+
+        final List<Long> expired = wheel.advance(2000);
+
+        assertEquals(expirations.size(), expired.size());
+        for (int i = 1; i < expired.size(); i++) {
+            assertTrue(ticks(expired.get(i - 1)) <= ticks(expired.get(i)));
+        }
+        Collections.sort(expirations);
+        final List<Long> sorted = new ArrayList<>(expired);
+        Collections.sort(sorted);
+        assertEquals(expirations, sorted);
+    }
+
+    @Test
+    public void rescheduledItemFiresAgainAtItsNewExpiration() {
+        final TimingWheel<String> wheel = new TimingWheel<>(TICK, 4, 3, 0);
+        wheel.schedule("room", 50);
+
+        assertEquals(Collections.emptyList(), wheel.advance(49));
+        assertEquals(Collections.singletonList("room"), wheel.advance(50));
+
+        // past the range of the top level, so parked first
+        wheel.schedule("room", 1000);
+        assertEquals(Collections.emptyList(), wheel.advance(999));
+        assertEquals(Collections.singletonList("room"), wheel.advance(1000));
+        assertEquals(Collections.emptyList(), wheel.advance(5000));
+    }
+
+    @Test
+    public void itemScheduledInThePastFiresOnTheNextTick() {
+        final TimingWheel<String> wheel = new TimingWheel<>(TICK, 4, 2, 0);
+        wheel.advance(500);
+        wheel.schedule("late", 100);
+
+        assertEquals(Collections.emptyList(), wheel.advance(509));
+        assertEquals(Collections.singletonList("late"), wheel.advance(510));
+    }
+
+    private static long ticks(long millis) {
+        return (millis + TICK - 1) / TICK;
+    }
+}
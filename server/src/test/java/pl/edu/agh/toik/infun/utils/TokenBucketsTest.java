@@ -0,0 +1,71 @@
+package pl.edu.agh.toik.infun.utils;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketsTest {
+    private static final long START = TimeUnit.SECONDS.toNanos(1000);
+
+    // 10 tokens per second, so one every 100 ms, and at most 3 at once
+    private final TokenBuckets buckets = new TokenBuckets(10, 3, 100);
+
+    @Test
+    public void burstIsTakenAtOnceThenTokensComeAtTheRate() {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(buckets.tryTake("a", START));
+        }
+        assertFalse(buckets.tryTake("a", START));
+        assertEquals(millis(100), buckets.nanosToToken("a", START));
+
+        assertFalse(buckets.tryTake("a", START + millis(99)));
+        assertTrue(buckets.tryTake("a", START + millis(100)));
+        assertFalse(buckets.tryTake("a", START + millis(100)));
+        assertEquals(millis(50), buckets.nanosToToken("a", START + millis(150)));
+    }
+
+    @Test
+    public void idleBucketRefillsOnlyUpToTheBurst() {
+        for (int i = 0; i < 3; i++) {
+            buckets.tryTake("a", START);
+        }
+        final long later = START + TimeUnit.MINUTES.toNanos(10);
+
+        assertEquals(0, buckets.nanosToToken("a", later));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(buckets.tryTake("a", later));
+        }
+        assertFalse(buckets.tryTake("a", later));
+    }
+
+    @Test
+    public void keysHaveTheirOwnBuckets() {
+        for (int i = 0; i < 3; i++) {
+            buckets.tryTake("a", START);
+        }
+
+        assertTrue(buckets.tryTake("b", START));
+        assertEquals(0, buckets.nanosToToken("unknown", START));
+    }
+
+    @Test
+    public void fullMapTakesNewKeysOnceOldBucketsAreFullAgain() {
+        final TokenBuckets limited = new TokenBuckets(10, 3, 2);
+        assertTrue(limited.tryTake("a", START));
+        assertTrue(limited.tryTake("b", START));
+
+        assertFalse(limited.tryTake("c", START + millis(100)));
+        // "a" and "b" are full again after 300 ms, but the map is swept at most once per 300 ms
+        assertFalse(limited.tryTake("c", START + millis(300)));
+        assertTrue(limited.tryTake("c", START + millis(400)));
+        assertEquals(1, limited.size());
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}